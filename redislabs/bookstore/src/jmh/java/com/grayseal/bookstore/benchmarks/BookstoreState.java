@@ -0,0 +1,75 @@
+package com.grayseal.bookstore.benchmarks;
+
+import com.grayseal.bookstore.BookstoreApplication;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Starts an embedded Redis on a free port and the application context against it, once per benchmark run.
+ *
+ * <p>The context seeds Redis from the fixtures in {@code src/jmh/resources/data} as the application does at
+ * startup. Passwords are hashed with a low BCrypt strength and fewer ratings are generated, so the seeding
+ * completes in seconds.</p>
+ */
+@State(Scope.Benchmark)
+public class BookstoreState {
+
+    private RedisServer redis;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redis = RedisServer.newRedisServer().port(port).setting("save \"\"").setting("appendonly no").build();
+        redis.start();
+
+        context = new SpringApplicationBuilder(BookstoreApplication.class)
+                .web(WebApplicationType.NONE)
+                // arguments, as they override application.properties
+                .run("--spring.data.redis.port=" + port,
+                        "--spring.data.redis.password=",
+                        "--spring.devtools.restart.enabled=false",
+                        "--logging.level.com.grayseal=WARN",
+                        "--app.bcrypt.strength=4",
+                        "--app.numberOfRatings=1000");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Removes all data, so a seeding step can run again.
+     */
+    public void flushAll() {
+        bean(StringRedisTemplate.class).execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,103 @@
+package com.grayseal.bookstore.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grayseal.bookstore.cache.CacheEntryRedisSerializer;
+import com.grayseal.bookstore.cache.JsonPayload;
+import com.grayseal.bookstore.cache.JsonPayloadRedisSerializer;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.repositories.BookRepository;
+import com.grayseal.bookstore.services.CatalogResponses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of a {@code booksCache} miss (rendering a page to JSON, optionally compressed) against the cost of a
+ * hit read from Redis (deserializing the stored entry, and inflating it for clients not accepting gzip).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheSerializationBenchmark {
+
+    @Param({"10", "50"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private Map<String, Object> page;
+    private CacheEntryRedisSerializer serializer;
+    private byte[] stored;
+    private Object entry;
+    private JsonPayload payload;
+
+    @Setup(Level.Trial)
+    public void setUp(BookstoreState state) {
+        objectMapper = state.bean(ObjectMapper.class);
+        Page<Book> books = state.bean(BookRepository.class).findAll(PageRequest.of(0, pageSize));
+        page = new HashMap<>();
+        page.put("books", books.getContent());
+        page.put("page", books.getNumber());
+        page.put("pages", books.getTotalPages());
+        page.put("total", books.getTotalElements());
+
+        // the entry as the application stores it
+        state.bean(CatalogResponses.class).books(0, pageSize);
+        RedisTemplate<String, String> redisTemplate = state.bean(StringRedisTemplate.class);
+        Set<String> keys = redisTemplate.keys("*booksCache::*:0-" + pageSize);
+        stored = redisTemplate.execute(connection -> connection.stringCommands().get(keys.iterator().next().getBytes(StandardCharsets.UTF_8)), true);
+        serializer = new CacheEntryRedisSerializer(new JsonPayloadRedisSerializer());
+        entry = serializer.deserialize(stored);
+        payload = JsonPayload.of(render(), 1024);
+    }
+
+    @Benchmark
+    public byte[] render() {
+        try {
+            return objectMapper.writeValueAsBytes(page);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public JsonPayload renderCompressed() {
+        return JsonPayload.of(render(), 1024);
+    }
+
+    @Benchmark
+    public Object readEntry() {
+        return serializer.deserialize(stored);
+    }
+
+    @Benchmark
+    public byte[] writeEntry() {
+        return serializer.serialize(entry);
+    }
+
+    @Benchmark
+    public byte[] inflate() {
+        return payload.json();
+    }
+}
@@ -0,0 +1,82 @@
+package com.grayseal.bookstore.benchmarks;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.repositories.BookRepository;
+import com.grayseal.bookstore.repositories.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of {@code Book} and {@code User} to and from the flattened hash format of Spring Data Redis.
+ * Reads resolve {@code @Reference} properties, so {@code readBook} and {@code readUser} include the lookups
+ * of their categories and roles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    private RedisConverter converter;
+    private Book book;
+    private User user;
+    private RedisData bookData;
+    private RedisData userData;
+
+    @Setup(Level.Trial)
+    public void setUp(BookstoreState state) {
+        converter = state.bean(RedisKeyValueAdapter.class).getConverter();
+        book = state.bean(BookRepository.class).findAll().iterator().next();
+        user = state.bean(UserRepository.class).findFirstByEmail("admin@example.com");
+        bookData = writeBook();
+        userData = writeUser();
+    }
+
+    @Benchmark
+    public RedisData writeBook() {
+        RedisData data = new RedisData();
+        converter.write(book, data);
+        return data;
+    }
+
+    @Benchmark
+    public Book readBook() {
+        return converter.read(Book.class, copy(bookData));
+    }
+
+    @Benchmark
+    public RedisData writeUser() {
+        RedisData data = new RedisData();
+        converter.write(user, data);
+        return data;
+    }
+
+    @Benchmark
+    public User readUser() {
+        return converter.read(User.class, copy(userData));
+    }
+
+    private static RedisData copy(RedisData data) {
+        RedisData copy = new RedisData(data.getBucket().rawMap());
+        copy.setId(data.getId());
+        copy.setKeyspace(data.getKeyspace());
+        return copy;
+    }
+}
@@ -0,0 +1,89 @@
+package com.grayseal.bookstore.benchmarks;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.BatchReader;
+import com.grayseal.bookstore.repositories.BookRepository;
+import com.grayseal.bookstore.repositories.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository reads, including the resolution of {@code @Reference} properties, against the embedded Redis.
+ * {@code findBooksById} and {@code batchReadBooks} load the same 20 books, one by one and in pipelined round
+ * trips respectively.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final int BATCH_SIZE = 20;
+
+    private BookRepository bookRepository;
+    private UserRepository userRepository;
+    private BatchReader batchReader;
+    private String bookId;
+    private String userId;
+    private List<String> bookIds;
+
+    @Setup(Level.Trial)
+    public void setUp(BookstoreState state) {
+        bookRepository = state.bean(BookRepository.class);
+        userRepository = state.bean(UserRepository.class);
+        batchReader = state.bean(BatchReader.class);
+        bookIds = new ArrayList<>();
+        bookRepository.findAll(PageRequest.of(0, BATCH_SIZE)).forEach(book -> bookIds.add(book.getId()));
+        bookId = bookIds.get(0);
+        userId = userRepository.findFirstByEmail("admin@example.com").getId();
+    }
+
+    @Benchmark
+    public Optional<Book> findBookById() {
+        return bookRepository.findById(bookId);
+    }
+
+    @Benchmark
+    public Optional<User> findUserById() {
+        return userRepository.findById(userId);
+    }
+
+    @Benchmark
+    public User findUserByEmail() {
+        return userRepository.findFirstByEmail("admin@example.com");
+    }
+
+    @Benchmark
+    public Iterable<Book> findBooksById() {
+        return bookRepository.findAllById(bookIds);
+    }
+
+    @Benchmark
+    public List<Book> batchReadBooks() {
+        return batchReader.findAllById(Book.class, bookIds);
+    }
+
+    @Benchmark
+    public Page<Book> findBooksPage() {
+        return bookRepository.findAll(PageRequest.of(1, BATCH_SIZE));
+    }
+}
@@ -0,0 +1,82 @@
+package com.grayseal.bookstore.benchmarks;
+
+import com.grayseal.bookstore.boot.CreateBookRatings;
+import com.grayseal.bookstore.boot.CreateBooks;
+import com.grayseal.bookstore.boot.CreateRoles;
+import com.grayseal.bookstore.boot.CreateUsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The seeding runners of the {@code boot} package, each timed on an empty store (apart from the data it
+ * depends on). Users are hashed with the low BCrypt strength set by {@link BookstoreState}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SeedingBenchmark {
+
+    private BookstoreState state;
+
+    @Setup(Level.Trial)
+    public void setUp(BookstoreState state) {
+        this.state = state;
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyStore {
+        @Setup(Level.Invocation)
+        public void setUp(BookstoreState state) {
+            state.flushAll();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WithRoles {
+        @Setup(Level.Invocation)
+        public void setUp(BookstoreState state) throws Exception {
+            state.flushAll();
+            state.bean(CreateRoles.class).run();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WithUsersAndBooks {
+        @Setup(Level.Invocation)
+        public void setUp(BookstoreState state) throws Exception {
+            state.flushAll();
+            state.bean(CreateRoles.class).run();
+            state.bean(CreateUsers.class).run();
+            state.bean(CreateBooks.class).run();
+        }
+    }
+
+    @Benchmark
+    public void createBooks(EmptyStore store) throws Exception {
+        state.bean(CreateBooks.class).run();
+    }
+
+    @Benchmark
+    public void createUsers(WithRoles store) throws Exception {
+        state.bean(CreateUsers.class).run();
+    }
+
+    @Benchmark
+    public void createBookRatings(WithUsersAndBooks store) throws Exception {
+        state.bean(CreateBookRatings.class).run();
+    }
+}
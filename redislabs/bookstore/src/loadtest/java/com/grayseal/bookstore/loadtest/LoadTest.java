@@ -0,0 +1,233 @@
+package com.grayseal.bookstore.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.grayseal.bookstore.BookstoreApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+/**
+ * Replays a mix of catalog and user lookups against the application at a fixed rate and reports the throughput
+ * and latency percentiles of each kind of request.
+ *
+ * <p>Unless {@code loadtest.baseUrl} points to a running instance, an embedded Redis and the application are
+ * started on free ports and seeded from the fixtures in {@code src/jmh/resources/data}, as for the benchmarks.
+ * The ISBNs and emails to look up are then read from the application itself. Settings are system properties:</p>
+ *
+ * <ul>
+ *     <li>{@code loadtest.rate}: requests per second, sent whether or not earlier ones were answered;</li>
+ *     <li>{@code loadtest.duration} and {@code loadtest.warmup}: ISO-8601 durations, requests due during the
+ *     warmup are not recorded;</li>
+ *     <li>{@code loadtest.mix}: the weight of each operation, as in {@code books=40,book=40,categories=10,userByEmail=10};</li>
+ *     <li>{@code loadtest.timeout}: how long to wait for a response before counting an error;</li>
+ *     <li>{@code loadtest.seed}: the seed of the random choice of operations and their parameters;</li>
+ *     <li>{@code loadtest.resultFile}: where to write the results as JSON.</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    public static void main(String[] args) throws Exception {
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "200"));
+        Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT30S"));
+        Duration warmup = Duration.parse(System.getProperty("loadtest.warmup", "PT5S"));
+        Duration timeout = Duration.parse(System.getProperty("loadtest.timeout", "PT5S"));
+        Map<String, Integer> mix = mix(System.getProperty("loadtest.mix", "books=40,book=40,categories=10,userByEmail=10"));
+        long seed = Long.parseLong(System.getProperty("loadtest.seed", "42"));
+        String resultFile = System.getProperty("loadtest.resultFile", "target/loadtest-result.json");
+        String baseUrl = System.getProperty("loadtest.baseUrl", "");
+
+        RedisServer redis = null;
+        ConfigurableApplicationContext context = null;
+        try {
+            if (baseUrl.isBlank()) {
+                int port = freePort();
+                redis = RedisServer.newRedisServer().port(port).setting("save \"\"").setting("appendonly no").build();
+                redis.start();
+                // devtools restarts the application in another thread unless disabled before it starts
+                System.setProperty("spring.devtools.restart.enabled", "false");
+                // arguments, as they override application.properties
+                context = new SpringApplicationBuilder(BookstoreApplication.class)
+                        .run("--server.port=0",
+                                "--spring.data.redis.port=" + port,
+                                "--spring.data.redis.password=",
+                                "--logging.level.root=WARN",
+                                "--app.bcrypt.strength=4",
+                                "--app.numberOfRatings=1000");
+                baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            }
+
+            ObjectMapper mapper = new ObjectMapper();
+            List<OpenLoopGenerator.Operation> operations = operations(baseUrl, mapper, mix);
+            System.out.printf(Locale.ROOT, ">>>> Sending %.0f requests/s to %s for %s after a %s warmup%n", rate, baseUrl, duration, warmup);
+
+            OpenLoopGenerator generator = new OpenLoopGenerator(baseUrl, operations, timeout);
+            List<OpenLoopGenerator.Result> results = generator.run(rate, warmup, duration, timeout, seed);
+            report(results, rate, duration, generator.maxInFlight(), mapper, resultFile);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (redis != null) {
+                redis.stop();
+            }
+        }
+    }
+
+    /**
+     * Builds the operations of the mix, with the ISBNs, page count and emails they pick from.
+     */
+    private static List<OpenLoopGenerator.Operation> operations(String baseUrl, ObjectMapper mapper, Map<String, Integer> mix)
+            throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        // pages are numbered from 0
+        JsonNode firstPage = get(client, mapper, baseUrl + "/api/books/books?page=0&size=" + PAGE_SIZE);
+        int pages = Math.max(1, firstPage.path("pages").asInt(1));
+
+        List<String> isbns = new ArrayList<>();
+        for (int page = 0; page < pages; page++) {
+            JsonNode books = page == 0 ? firstPage : get(client, mapper, baseUrl + "/api/books/books?page=" + page + "&size=" + PAGE_SIZE);
+            books.path("books").forEach(book -> isbns.add(book.path("id").asText()));
+        }
+        List<String> emails = new ArrayList<>();
+        get(client, mapper, baseUrl + "/api/users").forEach(user -> emails.add(user.path("email").asText()));
+        if (isbns.isEmpty() || emails.isEmpty()) {
+            throw new IllegalStateException("No books or users to look up at " + baseUrl);
+        }
+
+        Map<String, Function<SplittableRandom, String>> requests = Map.of(
+                "books", random -> "/api/books/books?page=" + random.nextInt(pages) + "&size=" + PAGE_SIZE,
+                "book", random -> "/api/books/" + isbns.get(random.nextInt(isbns.size())),
+                "categories", random -> "/api/books/categories",
+                "userByEmail", random -> "/api/users?email=" + URLEncoder.encode(emails.get(random.nextInt(emails.size())), StandardCharsets.UTF_8));
+        return mix.entrySet().stream().map(entry -> {
+            Function<SplittableRandom, String> request = requests.get(entry.getKey());
+            if (request == null) {
+                throw new IllegalArgumentException("Unknown operation " + entry.getKey() + ", expected one of " + requests.keySet());
+            }
+            return new OpenLoopGenerator.Operation(entry.getKey(), entry.getValue(), request);
+        }).toList();
+    }
+
+    private static void report(List<OpenLoopGenerator.Result> results, double rate, Duration duration, int maxInFlight,
+                               ObjectMapper mapper, String resultFile) throws IOException {
+        Histogram all = new Histogram(3);
+        long errors = 0;
+        Map<String, Object> operations = new LinkedHashMap<>();
+        System.out.printf(Locale.ROOT, "%-12s %9s %7s %10s %9s %9s %9s %9s %9s %12s%n",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms");
+        for (OpenLoopGenerator.Result result : results) {
+            all.add(result.latency());
+            errors += result.errors();
+            print(result.name(), result.requests(), result.errors(), duration, result.latency(), result.service());
+            operations.put(result.name(), summary(result.requests(), result.errors(), duration, result.latency(), result.service()));
+        }
+        print("all", all.getTotalCount(), errors, duration, all, null);
+        System.out.println(">>>> At most " + maxInFlight + " requests were waiting for a response");
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("rate", rate);
+        json.put("duration", duration.toString());
+        json.put("maxInFlight", maxInFlight);
+        json.put("all", summary(all.getTotalCount(), errors, duration, all, null));
+        json.put("operations", operations);
+        File file = new File(resultFile);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        mapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, json);
+        System.out.println(">>>> Results written to " + file.getAbsolutePath());
+    }
+
+    private static void print(String name, long requests, long errors, Duration duration, Histogram latency, Histogram service) {
+        System.out.printf(Locale.ROOT, "%-12s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %12s%n",
+                name, requests, errors, throughput(requests, duration), millis(latency, 50), millis(latency, 90),
+                millis(latency, 99), millis(latency, 99.9), latency.getMaxValue() / 1000d,
+                service == null ? "" : String.format(Locale.ROOT, "%.2f", millis(service, 99)));
+    }
+
+    private static Map<String, Object> summary(long requests, long errors, Duration duration, Histogram latency, Histogram service) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", requests);
+        summary.put("errors", errors);
+        summary.put("throughput", throughput(requests, duration));
+        summary.put("latencyMillis", percentiles(latency));
+        if (service != null) {
+            summary.put("serviceTimeMillis", percentiles(service));
+        }
+        return summary;
+    }
+
+    private static Map<String, Double> percentiles(Histogram histogram) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", millis(histogram, 50));
+        percentiles.put("p90", millis(histogram, 90));
+        percentiles.put("p99", millis(histogram, 99));
+        percentiles.put("p99.9", millis(histogram, 99.9));
+        percentiles.put("max", histogram.getMaxValue() / 1000d);
+        return percentiles;
+    }
+
+    private static double throughput(long requests, Duration duration) {
+        return requests / (duration.toNanos() / 1e9);
+    }
+
+    // the histograms hold microseconds
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000d;
+    }
+
+    private static JsonNode get(HttpClient client, ObjectMapper mapper, String url) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + url + " answered " + response.statusCode());
+        }
+        return mapper.readTree(response.body());
+    }
+
+    private static Map<String, Integer> mix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry " + entry + ", expected <operation>=<weight>");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(parts[0].trim(), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix " + mix + " has no operation with a positive weight");
+        }
+        return weights;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
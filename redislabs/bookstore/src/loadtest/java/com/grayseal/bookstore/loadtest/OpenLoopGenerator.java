@@ -0,0 +1,159 @@
+package com.grayseal.bookstore.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Sends requests at a fixed rate, whatever the response times, and records their latencies.
+ *
+ * <p>Request {@code i} is due at {@code start + i / rate}. A dispatcher thread waits for that time and hands
+ * the request to a new virtual thread, so a slow response never delays the next request the way it does in a
+ * closed loop, where each client waits for its previous response. Latency is measured from the time the request
+ * was due rather than from the time it was sent: when the generator itself falls behind, the wait counts towards
+ * the latency, which corrects for coordinated omission. The time from sending to the response is recorded too, as
+ * the service time, to show how much of the latency was spent queued.</p>
+ *
+ * <p>Requests due during the warmup are sent but not recorded.</p>
+ */
+class OpenLoopGenerator {
+
+    /**
+     * A kind of request and its share of the traffic.
+     *
+     * @param requests builds the path and query of a request from a random source
+     */
+    record Operation(String name, int weight, Function<SplittableRandom, String> requests) {
+    }
+
+    /**
+     * The latencies of the requests of an operation, in microseconds.
+     *
+     * @param latency the time from when the request was due to the response
+     * @param service the time from when the request was sent to the response
+     */
+    record Result(String name, long requests, long errors, Histogram latency, Histogram service) {
+    }
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final List<Operation> operations;
+    private final Map<String, Recorder> latencies = new LinkedHashMap<>();
+    private final Map<String, Recorder> serviceTimes = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int maxInFlight;
+
+    OpenLoopGenerator(String baseUrl, List<Operation> operations, Duration timeout) {
+        this.baseUrl = baseUrl;
+        this.operations = operations;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        operations.forEach(operation -> {
+            latencies.put(operation.name(), new Recorder(3));
+            serviceTimes.put(operation.name(), new Recorder(3));
+            errors.put(operation.name(), new LongAdder());
+        });
+    }
+
+    /**
+     * Sends {@code rate} requests per second for {@code warmup + duration}, then waits for the responses.
+     *
+     * @return the results of the requests due after the warmup, per operation
+     */
+    List<Result> run(double rate, Duration warmup, Duration duration, Duration timeout, long seed) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(seed);
+        int totalWeight = operations.stream().mapToInt(Operation::weight).sum();
+        double interval = 1_000_000_000d / rate;
+        long total = (long) ((warmup.toNanos() + duration.toNanos()) / interval);
+        long warmupEnd = warmup.toNanos();
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long due = start + (long) (i * interval);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Operation operation = pick(random, totalWeight);
+                String path = operation.requests().apply(random);
+                boolean recorded = due - start >= warmupEnd;
+                executor.execute(() -> send(operation.name(), path, due, recorded, timeout));
+            }
+        }
+
+        // the recorders were only written by the request threads, all finished
+        return operations.stream().map(operation -> {
+            Histogram latency = latencies.get(operation.name()).getIntervalHistogram();
+            Histogram service = serviceTimes.get(operation.name()).getIntervalHistogram();
+            return new Result(operation.name(), latency.getTotalCount(), errors.get(operation.name()).sum(), latency, service);
+        }).toList();
+    }
+
+    /**
+     * @return the highest number of requests waiting for a response at the same time
+     */
+    int maxInFlight() {
+        return maxInFlight;
+    }
+
+    private void send(String name, String path, long due, boolean recorded, Duration timeout) {
+        int current = inFlight.incrementAndGet();
+        if (current > maxInFlight) {
+            maxInFlight = current;
+        }
+        long sent = System.nanoTime();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(timeout).GET().build();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long received = System.nanoTime();
+            if (!recorded) {
+                return;
+            }
+            if (response.statusCode() >= 400) {
+                errors.get(name).increment();
+                return;
+            }
+            latencies.get(name).recordValue((received - due) / 1000);
+            serviceTimes.get(name).recordValue((received - sent) / 1000);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (recorded) {
+                errors.get(name).increment();
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private Operation pick(SplittableRandom random, int totalWeight) {
+        int value = random.nextInt(totalWeight);
+        for (Operation operation : operations) {
+            value -= operation.weight();
+            if (value < 0) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException("Operation weights changed");
+    }
+}
@@ -1,13 +1,38 @@
 package com.grayseal.bookstore;
 
+import com.grayseal.bookstore.cache.CacheEntryRedisSerializer;
+import com.grayseal.bookstore.cache.CacheGenerations;
+import com.grayseal.bookstore.cache.GenerationInvalidationHook;
+import com.grayseal.bookstore.cache.JsonPayloadRedisSerializer;
+import com.grayseal.bookstore.cache.RefreshPolicy;
+import com.grayseal.bookstore.cache.TwoTierCacheManager;
+import com.grayseal.bookstore.cache.TwoTierCacheMeterBinderProvider;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.Category;
+import com.grayseal.bookstore.redis.CompactLayout;
+import com.grayseal.bookstore.redis.CompactRedisConverter;
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import com.grayseal.bookstore.services.CatalogResponses;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.ReferenceResolver;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.time.Duration;
@@ -27,9 +52,34 @@ public class BookstoreApplication {
         return template;
     }
 
+    /**
+     * Creates the compact storage layout of the entities with {@code @CompactField}s.
+     * - **Packing:** With {@code app.storage.compact.packing}, the properties marked as packed are stored together in
+     *   one deflated field.
+     */
+    @Bean
+    public CompactLayout compactLayout(RedisMappingContext redisMappingContext,
+                                       @Value("${app.storage.compact.packing:false}") boolean packing) {
+        return new CompactLayout(redisMappingContext, packing);
+    }
+
+    /**
+     * Creates the converter of the repositories, in place of the one Spring Data Redis would register.
+     * - **Compact Writes:** Entities are written in the compact layout when {@code app.storage.compact.enabled} is set;
+     *   both layouts are always read.
+     */
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public MappingRedisConverter redisConverter(RedisMappingContext redisMappingContext, ReferenceResolver redisReferenceResolver,
+                                                RedisCustomConversions redisCustomConversions, CompactLayout compactLayout,
+                                                @Value("${app.storage.compact.enabled:false}") boolean compactWrites) {
+        CompactRedisConverter converter = new CompactRedisConverter(redisMappingContext, redisReferenceResolver, compactLayout, compactWrites);
+        converter.setCustomConversions(redisCustomConversions);
+        return converter;
+    }
+
+    @Bean
+    public BCryptPasswordEncoder passwordEncoder(@Value("${app.bcrypt.strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 
 
@@ -40,17 +90,133 @@ public class BookstoreApplication {
      * @param connectionFactory the RedisConnectionFactory used to connect to the Redis server.
      * @return a configured RedisCacheManager instance.
      * - **Prefix Cache Names:** Cache names are prefixed with the package name of the class to avoid naming collisions.
-     * - **Entry TTL (Time-to-Live):** Cache entries will expire after 1 hour.
+     * - **Entry TTL (Time-to-Live):** Cache entries are fresh for {@code app.cache.ttl} (1 hour by default), and kept
+     *   for {@code app.cache.staleWhileRevalidate} more so they can be served while they are refreshed.
      * - **Disable Caching Null Values:** Null values are not cached.
+     * - **Entry Header:** Values are stored with their creation and compute time, used to refresh them before they expire.
+     * - **Statistics:** Hits, misses, puts and lock waits of the Redis tier are recorded and exported as {@code cache.*} metrics.
+     * - **Catalog Caches:** The catalog caches hold pre-serialized JSON, stored as raw bytes instead of with JDK serialization.
      */
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory, RefreshPolicy refreshPolicy) {
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 .prefixCacheNameWith(this.getClass().getPackageName() + ".")
-                .entryTtl(Duration.ofHours(1))
-                .disableCachingNullValues();
+                .entryTtl(refreshPolicy.getTtl().plus(refreshPolicy.getStaleWhileRevalidate()))
+                .disableCachingNullValues()
+                .serializeValuesWith(SerializationPair.fromSerializer(new CacheEntryRedisSerializer(RedisSerializer.java(getClass().getClassLoader()))));
+        RedisCacheConfiguration jsonConfig = config
+                .serializeValuesWith(SerializationPair.fromSerializer(new CacheEntryRedisSerializer(new JsonPayloadRedisSerializer())));
+
+        return RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(config)
+                .withCacheConfiguration(CatalogResponses.BOOKS_CACHE, jsonConfig)
+                .withCacheConfiguration(CatalogResponses.CATEGORIES_CACHE, jsonConfig)
+                .enableStatistics()
+                .build();
+    }
+
+    /**
+     * Creates the refresh policy of the caches.
+     * - **Early Refresh:** Entries are refreshed in the background before they expire, with a probability tuned by
+     *   {@code app.cache.earlyRefreshBeta} (0 disables it).
+     * - **Lock TTL:** A load takes a Redis lock for at most {@code app.cache.lockTtl}, so other instances wait for its value.
+     */
+    @Bean
+    public RefreshPolicy refreshPolicy(@Value("${app.cache.ttl:PT1H}") Duration ttl,
+                                       @Value("${app.cache.staleWhileRevalidate:PT5M}") Duration staleWhileRevalidate,
+                                       @Value("${app.cache.earlyRefreshBeta:1.0}") double earlyRefreshBeta,
+                                       @Value("${app.cache.lockTtl:PT5S}") Duration lockTtl,
+                                       @Value("${app.cache.refreshThreads:2}") int refreshThreads) {
+        return RefreshPolicy.builder()
+                .ttl(ttl)
+                .staleWhileRevalidate(staleWhileRevalidate)
+                .earlyRefreshBeta(earlyRefreshBeta)
+                .lockTtl(lockTtl)
+                .refreshThreads(refreshThreads)
+                .build();
+    }
+
+    /**
+     * Creates the cache manager used by {@code @Cacheable}: a bounded in-process cache (L1) in front of the
+     * RedisCacheManager (L2), kept coherent across instances through Redis pub/sub.
+     * - **L1 Size:** At most {@code app.cache.local.maxSize} entries per cache, least recently used evicted first.
+     * - **L1 TTL:** Entries are dropped after {@code app.cache.local.ttl}, even without an invalidation message.
+     */
+    @Bean
+    @Primary
+    public TwoTierCacheManager cacheManager(RedisCacheManager redisCacheManager, StringRedisTemplate stringRedisTemplate,
+                                            RedisMessageListenerContainer redisMessageListenerContainer, RefreshPolicy refreshPolicy,
+                                            @Value("${app.cache.local.channel:bookstore:cache:invalidation}") String channel,
+                                            @Value("${app.cache.local.maxSize:1000}") int maxSize,
+                                            @Value("${app.cache.local.ttl:PT5M}") Duration ttl) {
+        return new TwoTierCacheManager(redisCacheManager, stringRedisTemplate, redisMessageListenerContainer,
+                channel, maxSize, ttl, refreshPolicy);
+    }
+
+    /**
+     * Creates the generation counters embedded in the catalog cache keys.
+     * - **Channel:** Bumps are announced on {@code app.cache.generation.channel}.
+     * - **Max Age:** Counters are read from Redis again after {@code app.cache.generation.maxAge}, even without a message.
+     */
+    @Bean
+    public CacheGenerations cacheGenerations(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer redisMessageListenerContainer,
+                                             @Value("${app.cache.generation.channel:bookstore:cache:generations}") String channel,
+                                             @Value("${app.cache.generation.maxAge:PT5S}") Duration maxAge) {
+        return new CacheGenerations(stringRedisTemplate, redisMessageListenerContainer, channel, maxAge);
+    }
 
-        return RedisCacheManager.builder(connectionFactory).cacheDefaults(config).build();
+    /**
+     * Invalidates the book pages whenever a book is saved or deleted.
+     */
+    @Bean
+    public EntityWriteHook<Book> bookCacheInvalidation(CacheGenerations cacheGenerations) {
+        return new GenerationInvalidationHook<>(Book.class, cacheGenerations, CatalogResponses.BOOKS_CACHE);
+    }
+
+    /**
+     * Invalidates the categories, and the book pages embedding them, whenever a category is saved or deleted.
+     */
+    @Bean
+    public EntityWriteHook<Category> categoryCacheInvalidation(CacheGenerations cacheGenerations) {
+        return new GenerationInvalidationHook<>(Category.class, cacheGenerations,
+                CatalogResponses.CATEGORIES_CACHE, CatalogResponses.BOOKS_CACHE);
+    }
+
+    /**
+     * Exports the metrics of the two-tier caches alongside those of the Redis caches.
+     */
+    @Bean
+    public TwoTierCacheMeterBinderProvider twoTierCacheMeterBinderProvider() {
+        return new TwoTierCacheMeterBinderProvider();
+    }
+
+    /**
+     * Times every Redis command sent by Lettuce as {@code lettuce.command.completion}, tagged with the command.
+     * - **Histogram:** Latencies are published as histogram buckets, so percentiles can be computed across instances.
+     * - **No Local Distinction:** Commands are not tagged with the local address, which changes with every connection.
+     */
+    @Bean
+    public MicrometerOptions micrometerOptions() {
+        return MicrometerOptions.builder()
+                .histogram(true)
+                .localDistinction(false)
+                .build();
+    }
+
+    /**
+     * Exports the active, idle and waiting counts of the Lettuce connection pool, used by pipelines and
+     * transactions, as {@code commons.pool2.*} gauges.
+     */
+    @Bean
+    public CommonsObjectPool2Metrics commonsObjectPool2Metrics() {
+        return new CommonsObjectPool2Metrics();
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
     }
 
 }
@@ -0,0 +1,20 @@
+package com.grayseal.bookstore.boot;
+
+import com.grayseal.bookstore.services.BookIdFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(9)
+public class CreateBookIdFilter implements CommandLineRunner {
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Override
+    public void run(String... args) throws Exception {
+        bookIdFilter.load();
+    }
+}
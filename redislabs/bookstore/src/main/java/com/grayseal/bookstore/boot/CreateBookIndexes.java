@@ -0,0 +1,39 @@
+package com.grayseal.bookstore.boot;
+
+import com.grayseal.bookstore.repositories.BookRepository;
+import com.grayseal.bookstore.services.BookFilterIndex;
+import com.grayseal.bookstore.services.BookSortIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(5)
+@Slf4j
+public class CreateBookIndexes implements CommandLineRunner {
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookSortIndex bookSortIndex;
+
+    @Autowired
+    private BookFilterIndex bookFilterIndex;
+
+    @Override
+    public void run(String... args) throws Exception {
+        long books = bookRepository.count();
+        // books seeded before the sort indexes existed are not in them yet
+        if (bookSortIndex.size() != books) {
+            long indexed = bookSortIndex.rebuild();
+            log.info(">>>> Rebuilt book sort indexes for " + indexed + " books...");
+        }
+        if (bookFilterIndex.size() != books) {
+            long indexed = bookFilterIndex.rebuild();
+            log.info(">>>> Rebuilt book filter indexes for " + indexed + " books...");
+        }
+    }
+}
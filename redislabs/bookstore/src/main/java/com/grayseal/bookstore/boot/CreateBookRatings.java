@@ -3,6 +3,8 @@ package com.grayseal.bookstore.boot;
 import com.grayseal.bookstore.models.Book;
 import com.grayseal.bookstore.models.BookRating;
 import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.BulkWriteStats;
+import com.grayseal.bookstore.redis.BulkWriter;
 import com.grayseal.bookstore.repositories.BookRatingRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +14,14 @@ import org.springframework.core.annotation.Order;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
 @Component
@@ -26,35 +35,133 @@ public class CreateBookRatings implements CommandLineRunner {
     @Value("${app.ratingStars}")
     private Integer ratingStars;
 
+    /**
+     * When enabled, book and user ids are sampled once up front and ratings are generated on parallel
+     * workers, instead of issuing two {@code SRANDMEMBER} calls per rating.
+     */
+    @Value("${app.ratings.bulk:true}")
+    private Boolean bulk;
+
+    @Value("${app.ratings.batchSize:1000}")
+    private Integer batchSize;
+
+    @Value("${app.ratings.parallelism:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private Integer parallelism;
+
+    /**
+     * When enabled, the workers run on virtual threads, so {@code app.ratings.parallelism} can exceed the
+     * number of cores: workers mostly wait for their pipelined writes.
+     */
+    @Value("${spring.threads.virtual.enabled:false}")
+    private Boolean virtualThreads;
+
+    /**
+     * Number of ids to sample from each id set with {@code SRANDMEMBER key -count}. Zero takes a full
+     * snapshot of the id sets with {@code SMEMBERS}.
+     */
+    @Value("${app.ratings.sampleSize:0}")
+    private Integer sampleSize;
+
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
     @Autowired
     private BookRatingRepository bookRatingRepo;
 
+    @Autowired
+    private BulkWriter bulkWriter;
+
     @Override
     public void run(String... args) throws Exception {
         if (bookRatingRepo.count() == 0) {
-            Random random = new Random();
-            IntStream.range(0, numberOfRatings).forEach(n -> {
-                String bookId = redisTemplate.opsForSet().randomMember(Book.class.getName());
-                String userId = redisTemplate.opsForSet().randomMember(User.class.getName());
-                int stars = random.nextInt(ratingStars) + 1;
-
-                User user = new User();
-                user.setId(userId);
-
-                Book book = new Book();
-                book.setId(bookId);
-
-                BookRating rating = BookRating.builder() //
-                        .user(user) //
-                        .book(book) //
-                        .rating(stars).build();
-                bookRatingRepo.save(rating);
-            });
-
-            log.info(">>>> BookRating created...");
+            BulkWriteStats stats = bulk ? createInBulk() : createSequentially();
+            log.info(">>>> BookRating created... Bulk write: " + stats);
+        }
+    }
+
+    private BulkWriteStats createSequentially() {
+        Random random = new Random();
+        BulkWriteStats stats = new BulkWriteStats();
+        List<BookRating> batch = new ArrayList<>(bulkWriter.getBatchSize());
+        IntStream.range(0, numberOfRatings).forEach(n -> {
+            String bookId = redisTemplate.opsForSet().randomMember(Book.class.getName());
+            String userId = redisTemplate.opsForSet().randomMember(User.class.getName());
+            int stars = random.nextInt(ratingStars) + 1;
+
+            batch.add(rating(bookId, userId, stars));
+            if (batch.size() == bulkWriter.getBatchSize()) {
+                bulkWriter.write(batch, stats);
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            bulkWriter.write(batch, stats);
+        }
+        return stats;
+    }
+
+    private BulkWriteStats createInBulk() throws Exception {
+        String[] bookIds = sampleIds(Book.class.getName());
+        String[] userIds = sampleIds(User.class.getName());
+        BulkWriteStats stats = new BulkWriteStats();
+        if (bookIds.length == 0 || userIds.length == 0) {
+            log.info(">>>> No books or users to rate...");
+            return stats;
+        }
+        log.info(">>>> Sampled " + bookIds.length + " book ids and " + userIds.length + " user ids, generating "
+                + numberOfRatings + " ratings on " + parallelism + " workers");
+
+        ExecutorService executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> workers = new ArrayList<>(parallelism);
+            for (int worker = 0; worker < parallelism; worker++) {
+                // spread the remainder over the first workers
+                int share = numberOfRatings / parallelism + (worker < numberOfRatings % parallelism ? 1 : 0);
+                workers.add(executor.submit(() -> generate(share, bookIds, userIds, stats)));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return stats;
+    }
+
+    private void generate(int count, String[] bookIds, String[] userIds, BulkWriteStats stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<BookRating> batch = new ArrayList<>(batchSize);
+        for (int n = 0; n < count; n++) {
+            String bookId = bookIds[random.nextInt(bookIds.length)];
+            String userId = userIds[random.nextInt(userIds.length)];
+            batch.add(rating(bookId, userId, random.nextInt(ratingStars) + 1));
+            if (batch.size() == batchSize) {
+                bulkWriter.write(batch, stats);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            bulkWriter.write(batch, stats);
         }
     }
-}
\ No newline at end of file
+
+    private String[] sampleIds(String keyspace) {
+        Collection<String> ids = sampleSize > 0
+                ? redisTemplate.opsForSet().randomMembers(keyspace, sampleSize)
+                : redisTemplate.opsForSet().members(keyspace);
+        return ids == null ? new String[0] : ids.toArray(new String[0]);
+    }
+
+    private static BookRating rating(String bookId, String userId, int stars) {
+        User user = new User();
+        user.setId(userId);
+
+        Book book = new Book();
+        book.setId(bookId);
+
+        return BookRating.builder() //
+                .user(user) //
+                .book(book) //
+                .rating(stars).build();
+    }
+}
@@ -4,10 +4,12 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.grayseal.bookstore.models.Book;
 import com.grayseal.bookstore.models.Category;
+import com.grayseal.bookstore.redis.BulkWriteStats;
+import com.grayseal.bookstore.redis.BulkWriter;
 import com.grayseal.bookstore.repositories.BookRepository;
-import com.grayseal.bookstore.repositories.CategoryRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
@@ -18,9 +20,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @Component
@@ -32,7 +38,13 @@ public class CreateBooks implements CommandLineRunner {
     private BookRepository bookRepository;
 
     @Autowired
-    private CategoryRepository categoryRepository;
+    private BulkWriter bulkWriter;
+
+    /**
+     * When enabled, the book files are imported concurrently, each on its own virtual thread.
+     */
+    @Value("${spring.threads.virtual.enabled:false}")
+    private Boolean virtualThreads;
 
     @Override
     public void run(String... args) throws Exception {
@@ -48,36 +60,47 @@ public class CreateBooks implements CommandLineRunner {
                             .map(java.nio.file.Path::toFile) //
                             .collect(Collectors.toList());
 
-            Map<String, Category> categories = new HashMap<String, Category>();
-
-            files.forEach(file -> {
-                try {
-                    log.info(">>>> Processing Book File: " + file.getPath());
-                    String categoryName = file.getName().substring(0, file.getName().lastIndexOf("_"));
-                    log.info(">>>> Category: " + categoryName);
+            Map<String, Category> categories = new ConcurrentHashMap<String, Category>();
+            BulkWriteStats stats = new BulkWriteStats();
 
-                    Category category;
-                    if (!categories.containsKey(categoryName)) {
-                        category = Category.builder().name(categoryName).build();
-                        categoryRepository.save(category);
-                        categories.put(categoryName, category);
-                    } else {
-                        category = categories.get(categoryName);
+            if (virtualThreads) {
+                try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                    List<Future<?>> imports = new ArrayList<>(files.size());
+                    files.forEach(file -> imports.add(executor.submit(() -> importFile(file, mapper, typeReference, categories, stats))));
+                    for (Future<?> fileImport : imports) {
+                        fileImport.get();
                     }
-
-                    InputStream inputStream = new FileInputStream(file);
-                    List<Book> books = mapper.readValue(inputStream, typeReference);
-                    books.stream().forEach((book) -> {
-                        book.addCategory(category);
-                        bookRepository.save(book);
-                    });
-                    log.info(">>>> " + books.size() + " Books Saved!");
-                } catch (IOException e) {
-                    log.info("Unable to import books: " + e.getMessage());
                 }
-            });
+            } else {
+                files.forEach(file -> importFile(file, mapper, typeReference, categories, stats));
+            }
 
+            log.info(">>>> Bulk write: " + stats);
             log.info(">>>> Loaded Book Data and Created books...");
         }
     }
+
+    private void importFile(File file, ObjectMapper mapper, TypeReference<List<Book>> typeReference,
+                            Map<String, Category> categories, BulkWriteStats stats) {
+        try {
+            log.info(">>>> Processing Book File: " + file.getPath());
+            String categoryName = file.getName().substring(0, file.getName().lastIndexOf("_"));
+            log.info(">>>> Category: " + categoryName);
+
+            // files of the same category may be imported concurrently, the category is saved once
+            Category category = categories.computeIfAbsent(categoryName, name -> {
+                Category created = Category.builder().name(name).build();
+                stats.merge(bulkWriter.saveAll(List.of(created)));
+                return created;
+            });
+
+            InputStream inputStream = new FileInputStream(file);
+            List<Book> books = mapper.readValue(inputStream, typeReference);
+            books.forEach(book -> book.addCategory(category));
+            stats.merge(bulkWriter.saveAll(books));
+            log.info(">>>> " + books.size() + " Books Saved!");
+        } catch (IOException e) {
+            log.info("Unable to import books: " + e.getMessage());
+        }
+    }
 }
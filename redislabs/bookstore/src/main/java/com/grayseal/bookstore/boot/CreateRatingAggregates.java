@@ -0,0 +1,34 @@
+package com.grayseal.bookstore.boot;
+
+import com.grayseal.bookstore.repositories.BookRatingRepository;
+import com.grayseal.bookstore.services.RatingAggregates;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(6)
+@Slf4j
+public class CreateRatingAggregates implements CommandLineRunner {
+
+    @Value("${app.ratings.rebuildAggregates:false}")
+    private Boolean rebuildAggregates;
+
+    @Autowired
+    private BookRatingRepository bookRatingRepo;
+
+    @Autowired
+    private RatingAggregates ratingAggregates;
+
+    @Override
+    public void run(String... args) throws Exception {
+        // ratings seeded before the aggregates existed have no leaderboard entries yet
+        if (rebuildAggregates || (ratingAggregates.leaderboardSize() == 0 && bookRatingRepo.count() > 0)) {
+            long ratings = ratingAggregates.rebuild();
+            log.info(">>>> Rebuilt rating aggregates from " + ratings + " ratings...");
+        }
+    }
+}
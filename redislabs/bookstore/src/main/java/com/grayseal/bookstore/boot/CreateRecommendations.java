@@ -0,0 +1,35 @@
+package com.grayseal.bookstore.boot;
+
+import com.grayseal.bookstore.repositories.BookRatingRepository;
+import com.grayseal.bookstore.services.BookRecommendations;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(8)
+@Slf4j
+public class CreateRecommendations implements CommandLineRunner {
+
+    @Value("${app.recommendations.rebuild:false}")
+    private Boolean rebuild;
+
+    @Autowired
+    private BookRatingRepository bookRatingRepo;
+
+    @Autowired
+    private BookRecommendations bookRecommendations;
+
+    @Override
+    public void run(String... args) throws Exception {
+        // ratings seeded before the recommendations existed have no co-rating counts yet
+        if (rebuild || (bookRecommendations.readers() == 0 && bookRatingRepo.count() > 0)) {
+            long start = System.currentTimeMillis();
+            long ratings = bookRecommendations.rebuild();
+            log.info(">>>> Rebuilt book recommendations from " + ratings + " high ratings in " + (System.currentTimeMillis() - start) + " ms...");
+        }
+    }
+}
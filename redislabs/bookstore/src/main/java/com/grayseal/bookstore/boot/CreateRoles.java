@@ -1,6 +1,8 @@
 package com.grayseal.bookstore.boot;
 
 import com.grayseal.bookstore.models.Role;
+import com.grayseal.bookstore.redis.BulkWriteStats;
+import com.grayseal.bookstore.redis.BulkWriter;
 import com.grayseal.bookstore.repositories.RoleRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +10,8 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 @Order(1)
 @Slf4j
@@ -15,14 +19,16 @@ public class CreateRoles implements CommandLineRunner {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private BulkWriter bulkWriter;
+
     @Override
     public void run(String... args) throws Exception {
         if (roleRepository.count() == 0) {
             Role adminRole = Role.builder().name("admin").build();
-            roleRepository.save(adminRole);
             Role customerRole = Role.builder().name("customer").build();
-            roleRepository.save(customerRole);
-            log.info(">>>> Created admin and customer roles...");
+            BulkWriteStats stats = bulkWriter.saveAll(List.of(adminRole, customerRole));
+            log.info(">>>> Created admin and customer roles... Bulk write: " + stats);
         }
     }
 }
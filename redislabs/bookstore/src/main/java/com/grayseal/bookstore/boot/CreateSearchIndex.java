@@ -0,0 +1,28 @@
+package com.grayseal.bookstore.boot;
+
+import com.grayseal.bookstore.services.BookSearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(7)
+@Slf4j
+public class CreateSearchIndex implements CommandLineRunner {
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Override
+    public void run(String... args) throws Exception {
+        // the index lives in memory, so every instance builds its own from the catalog
+        long start = System.nanoTime();
+        int indexed = bookSearchIndex.rebuild();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        BookSearchIndex.IndexStats stats = bookSearchIndex.stats();
+        log.info(">>>> Indexed " + indexed + " books for search in " + elapsedMillis + " ms: " + stats.getTerms()
+                + " terms, " + stats.getPostings() + " postings, ~" + stats.getEstimatedBytes() / 1024 + " KiB");
+    }
+}
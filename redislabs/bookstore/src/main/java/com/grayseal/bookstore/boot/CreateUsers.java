@@ -5,8 +5,11 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.grayseal.bookstore.models.Role;
 import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.BulkWriteStats;
+import com.grayseal.bookstore.redis.BulkWriter;
 import com.grayseal.bookstore.repositories.RoleRepository;
 import com.grayseal.bookstore.repositories.UserRepository;
+import com.grayseal.bookstore.security.PasswordHashingPool;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
@@ -16,7 +19,11 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
 
 @Component
 @Order(2)
@@ -32,6 +39,12 @@ public class CreateUsers implements CommandLineRunner {
     @Autowired
     private BCryptPasswordEncoder passwordEncoder;
 
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    @Autowired
+    private PasswordHashingPool hashingPool;
+
     @Override
     public void run(String... args) throws Exception {
         if (userRepository.count() == 0) {
@@ -50,12 +63,8 @@ public class CreateUsers implements CommandLineRunner {
                 // convert the JSON to objects
                 List<User> users = mapper.readValue(inputStream, typeReference);
 
-                users.stream().forEach((user) -> {
-                    user.setPassword(passwordEncoder.encode(user.getPassword()));
-                    user.addRole(customer);
-                    userRepository.save(user);
-                });
-                log.info(">>>> " + users.size() + " Users Saved!");
+                BulkWriteStats stats = hashAndSave(users, customer);
+                log.info(">>>> " + users.size() + " Users Saved! Bulk write: " + stats);
             } catch (IOException e) {
                 log.info(">>>> Unable to import users: " + e.getMessage());
             }
@@ -66,8 +75,52 @@ public class CreateUsers implements CommandLineRunner {
             adminUser.setPassword(passwordEncoder.encode("Reindeer Flotilla"));//
             adminUser.addRole(admin);
 
-            userRepository.save(adminUser);
-            log.info(">>>> Loaded User Data and Created users...");
+            BulkWriteStats stats = bulkWriter.saveAll(List.of(adminUser));
+            log.info(">>>> Loaded User Data and Created users... Admin bulk write: " + stats);
+        }
+    }
+
+    /**
+     * Hashes the passwords on the {@link PasswordHashingPool} and writes users as soon as their hashes are
+     * ready, so Redis writes overlap with the remaining hashing work.
+     */
+    private BulkWriteStats hashAndSave(List<User> users, Role role) throws InterruptedException {
+        long start = System.nanoTime();
+        BlockingQueue<CompletableFuture<User>> hashed = new LinkedBlockingQueue<>();
+        users.forEach(user -> {
+            CompletableFuture<User> future = hashingPool.encode(user.getPassword()).thenApply(password -> {
+                user.setPassword(password);
+                user.addRole(role);
+                return user;
+            });
+            future.whenComplete((result, error) -> hashed.add(future));
+        });
+
+        BulkWriteStats stats = new BulkWriteStats();
+        List<User> batch = new ArrayList<>(bulkWriter.getBatchSize());
+        for (int n = 0; n < users.size(); n++) {
+            CompletableFuture<User> next = hashed.poll();
+            if (next == null) {
+                // nothing hashed yet, write what we have while the pool keeps working
+                if (!batch.isEmpty()) {
+                    bulkWriter.write(batch, stats);
+                    batch.clear();
+                }
+                next = hashed.take();
+            }
+            batch.add(next.join());
+            if (batch.size() == bulkWriter.getBatchSize()) {
+                bulkWriter.write(batch, stats);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            bulkWriter.write(batch, stats);
         }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        log.info(String.format(">>>> Hashed %d passwords on %d threads (%.1f hashes/sec)",
+                users.size(), hashingPool.getThreads(), seconds == 0 ? 0 : users.size() / seconds));
+        return stats;
     }
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+package com.grayseal.bookstore.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An in-process Bloom filter over strings: {@link #mightContain(String)} is never false for a value that was
+ * added, and true for a value that was not with a probability close to the false-positive rate it was sized for,
+ * as long as no more than the expected number of values are added.
+ *
+ * <p>The bits are laid out like a Redis bitmap, bit 0 being the most significant bit of the first byte, so
+ * {@link #offsets(String)} can be set with {@code SETBIT} and {@link #toBytes()} / {@link #or(byte[])} exchanged
+ * with {@code GET} and {@code SET}. Bits are only ever set, atomically, so it can be read and updated from any
+ * thread without locking. The {@code k} offsets of a value are derived from two 64-bit hashes
+ * ({@code h1 + i * h2}, Kirsch and Mitzenmacher).</p>
+ */
+public class BloomFilter {
+
+    private final long bits;
+    private final int hashFunctions;
+    private final AtomicLongArray words;
+
+    private BloomFilter(long bits, int hashFunctions) {
+        this.bits = bits;
+        this.hashFunctions = hashFunctions;
+        this.words = new AtomicLongArray(Math.toIntExact(bits / Long.SIZE));
+    }
+
+    /**
+     * Creates an empty filter with the optimal number of bits, rounded up to a multiple of 64, and hash functions.
+     *
+     * @param expectedInsertions the number of values the filter is sized for
+     * @param falsePositiveRate  the false-positive rate once that many values were added
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter size: " + expectedInsertions + " values at " + falsePositiveRate);
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bits = (bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE;
+        int hashFunctions = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        return new BloomFilter(bits, hashFunctions);
+    }
+
+    /**
+     * @return the bit offsets of a value
+     */
+    public long[] offsets(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // FNV-1a, then two different finalizers for two independent-looking hashes
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+        long[] offsets = new long[hashFunctions];
+        for (int i = 0; i < hashFunctions; i++) {
+            offsets[i] = Long.remainderUnsigned(h1 + i * h2, bits);
+        }
+        return offsets;
+    }
+
+    public void put(String value) {
+        for (long offset : offsets(value)) {
+            int word = (int) (offset >>> 6);
+            long mask = 1L << (63 - (offset & 63));
+            long current;
+            do {
+                current = words.get(word);
+            } while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * @return false if the value was definitely never added
+     */
+    public boolean mightContain(String value) {
+        for (long offset : offsets(value)) {
+            if ((words.get((int) (offset >>> 6)) & (1L << (63 - (offset & 63)))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets every bit set in a bitmap of the same size, such as one read from Redis.
+     */
+    public void or(byte[] bitmap) {
+        // a bitmap may be shorter than the filter when its last bits were never set
+        byte[] padded = new byte[(int) (bits / Byte.SIZE)];
+        System.arraycopy(bitmap, 0, padded, 0, Math.min(bitmap.length, padded.length));
+        LongBuffer buffer = ByteBuffer.wrap(padded).asLongBuffer();
+        for (int i = 0; i < words.length(); i++) {
+            long mask = buffer.get(i);
+            if (mask != 0) {
+                words.getAndAccumulate(i, mask, (current, added) -> current | added);
+            }
+        }
+    }
+
+    /**
+     * @return the bits, as a Redis bitmap
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (bits / Byte.SIZE));
+        for (int i = 0; i < words.length(); i++) {
+            buffer.putLong(words.get(i));
+        }
+        return buffer.array();
+    }
+
+    public long bits() {
+        return bits;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * @return the number of bits set
+     */
+    public long bitCount() {
+        long count = 0;
+        for (int i = 0; i < words.length(); i++) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of distinct values added, estimated from the number of bits set
+     */
+    public long approximateElementCount() {
+        double set = bitCount();
+        return set >= bits ? Long.MAX_VALUE : Math.round(-(double) bits / hashFunctions * Math.log1p(-set / bits));
+    }
+
+    /**
+     * @return the probability that a value never added is reported as present, given the bits currently set
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) bitCount() / bits, hashFunctions);
+    }
+
+    // the splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,12 @@
+package com.grayseal.bookstore.cache;
+
+/**
+ * A cached value with the time it was computed and how long computing it took, which a {@link TwoTierCache}
+ * uses to decide when to refresh it.
+ *
+ * @param value         the cached value
+ * @param createdAt     when the value was computed, in epoch milliseconds
+ * @param computeMillis how long the value took to compute; 0 when unknown
+ */
+record CacheEntry(Object value, long createdAt, long computeMillis) {
+}
@@ -0,0 +1,54 @@
+package com.grayseal.bookstore.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the {@link CacheEntry}s of a {@link TwoTierCache} as a 13 byte header (a marker byte, the creation
+ * time and the compute time) followed by the value written with a delegate serializer.
+ *
+ * <p>Values written before entries had a header are read as entries of unknown age, so they are refreshed on
+ * first use.</p>
+ */
+public class CacheEntryRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte MARKER = 0x7F;
+    private static final int HEADER_LENGTH = 1 + Long.BYTES + Integer.BYTES;
+
+    private final RedisSerializer<Object> delegate;
+
+    @SuppressWarnings("unchecked")
+    public CacheEntryRedisSerializer(RedisSerializer<?> delegate) {
+        this.delegate = (RedisSerializer<Object>) delegate;
+    }
+
+    @Override
+    public byte[] serialize(Object value) {
+        if (!(value instanceof CacheEntry entry)) {
+            return delegate.serialize(value);
+        }
+        byte[] serialized = delegate.serialize(entry.value());
+        return ByteBuffer.allocate(HEADER_LENGTH + serialized.length)
+                .put(MARKER)
+                .putLong(entry.createdAt())
+                .putInt((int) Math.min(Integer.MAX_VALUE, entry.computeMillis()))
+                .put(serialized)
+                .array();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MARKER) {
+            return new CacheEntry(delegate.deserialize(bytes), 0, 0);
+        }
+        ByteBuffer header = ByteBuffer.wrap(bytes, 1, HEADER_LENGTH - 1);
+        long createdAt = header.getLong();
+        int computeMillis = header.getInt();
+        return new CacheEntry(delegate.deserialize(Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length)), createdAt, computeMillis);
+    }
+}
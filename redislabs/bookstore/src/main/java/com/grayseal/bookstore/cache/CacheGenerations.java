@@ -0,0 +1,91 @@
+package com.grayseal.bookstore.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-cache generation counters, embedded in cache keys so that a whole cache is invalidated in O(1) by
+ * incrementing its counter: entries of older generations are no longer looked up and expire with their TTL.
+ *
+ * <p>Counters live in Redis under {@code bookstore:cache:generation:<cache name>}. Each instance keeps the
+ * current values in memory, so computing a key does not cost a round trip. A bump is published on a pub/sub
+ * channel and every instance, including the one that bumped, reads the counter again on its next use. Values
+ * are also read again after {@code maxAge}, which bounds staleness if a message is lost.</p>
+ */
+@Slf4j
+public class CacheGenerations implements MessageListener {
+
+    private static final String KEY_PREFIX = "bookstore:cache:generation:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final String channel;
+    private final long maxAgeNanos;
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+
+    private record Generation(long value, long readAt) {
+    }
+
+    public CacheGenerations(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer,
+                            String channel, Duration maxAge) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.channel = channel;
+        this.maxAgeNanos = maxAge.toNanos();
+    }
+
+    @PostConstruct
+    void start() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * Returns the current generation of a cache, for use in {@code @Cacheable} keys.
+     *
+     * @param cacheName the cache name
+     * @return the generation, 0 if the cache was never invalidated
+     */
+    public long get(String cacheName) {
+        Generation generation = generations.get(cacheName);
+        if (generation == null || System.nanoTime() - generation.readAt() > maxAgeNanos) {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + cacheName);
+            generation = new Generation(value == null ? 0 : Long.parseLong(value), System.nanoTime());
+            generations.put(cacheName, generation);
+        }
+        return generation.value();
+    }
+
+    /**
+     * Invalidates caches by incrementing their generation and announcing it. Only issues commands, so it can be
+     * called inside a pipeline.
+     *
+     * @param connection the connection to issue the commands on
+     * @param cacheNames the caches to invalidate
+     */
+    public void bump(RedisConnection connection, String... cacheNames) {
+        for (String cacheName : cacheNames) {
+            connection.stringCommands().incr(bytes(KEY_PREFIX + cacheName));
+            connection.publish(bytes(channel), bytes(cacheName));
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        generations.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
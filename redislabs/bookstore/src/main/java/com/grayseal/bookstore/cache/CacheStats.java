@@ -0,0 +1,34 @@
+package com.grayseal.bookstore.cache;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A point-in-time snapshot of the hit and miss counters of a {@link TwoTierCache}.
+ *
+ * <p>{@code l1} is the in-process tier and {@code l2} the Redis tier. Every L1 miss is looked up in L2, so
+ * {@code l2Hits + l2Misses == l1Misses}.</p>
+ *
+ * <p>{@code loads} counts the values computed by this instance and {@code coalesced} the misses that waited for
+ * a load already running here instead of starting their own. {@code lockWaits} counts the loads that found
+ * another instance holding the lock of the key. {@code staleHits} counts expired entries served while they
+ * were refreshed, and {@code earlyRefreshes} the refreshes started before expiry.</p>
+ */
+@Data
+@Builder
+public class CacheStats {
+    private String name;
+    private long l1Hits;
+    private long l1Misses;
+    private long l1Evictions;
+    private int l1Size;
+    private long l2Hits;
+    private long l2Misses;
+    private long remoteInvalidations;
+    private long loads;
+    private long coalesced;
+    private long lockWaits;
+    private long earlyRefreshes;
+    private long staleHits;
+    private long refreshFailures;
+}
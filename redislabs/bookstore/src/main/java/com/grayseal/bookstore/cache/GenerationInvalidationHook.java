@@ -0,0 +1,45 @@
+package com.grayseal.bookstore.cache;
+
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.util.List;
+
+/**
+ * Invalidates caches whenever an entity of a given type is saved or deleted, by bumping their
+ * {@link CacheGenerations generation}. A batch of bulk writes bumps them once.
+ *
+ * @param <T> the entity type
+ */
+public class GenerationInvalidationHook<T> implements EntityWriteHook<T> {
+
+    private final Class<T> type;
+    private final CacheGenerations cacheGenerations;
+    private final String[] cacheNames;
+
+    public GenerationInvalidationHook(Class<T> type, CacheGenerations cacheGenerations, String... cacheNames) {
+        this.type = type;
+        this.cacheGenerations = cacheGenerations;
+        this.cacheNames = cacheNames;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public void afterSave(RedisConnection connection, T entity) {
+        cacheGenerations.bump(connection, cacheNames);
+    }
+
+    @Override
+    public void afterDelete(RedisConnection connection, T entity) {
+        cacheGenerations.bump(connection, cacheNames);
+    }
+
+    @Override
+    public void afterWrites(RedisConnection connection, List<T> previous, List<T> saved) {
+        cacheGenerations.bump(connection, cacheNames);
+    }
+}
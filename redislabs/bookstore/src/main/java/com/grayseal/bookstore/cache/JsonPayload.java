@@ -0,0 +1,209 @@
+package com.grayseal.bookstore.cache;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body serialized to JSON once, and cached as is.
+ *
+ * <p>A cache hit is written to the HTTP response without deserializing objects from the cache and serializing
+ * them to JSON again. Bodies of at least {@code compressionThreshold} bytes are stored gzip compressed, which
+ * saves Redis memory and network transfer, and are sent compressed to clients accepting gzip. Instances are
+ * immutable.</p>
+ *
+ * <p>The digest of the JSON document is computed once, with the document, and cached with it. It is the strong
+ * {@code ETag} of the responses carrying the payload, so a request whose {@code If-None-Match} has it is answered
+ * with 304 Not Modified, without decompressing or sending the body. The gzip encoded response has its own tag,
+ * as a strong validator must differ between encodings.</p>
+ */
+public final class JsonPayload {
+
+    static final int DIGEST_LENGTH = 16;
+    private static final String GZIP_TAG_SUFFIX = "-gzip";
+
+    private final byte[] body;
+    private final boolean compressed;
+    private final byte[] digest;
+
+    JsonPayload(byte[] body, boolean compressed, byte[] digest) {
+        this.body = body;
+        this.compressed = compressed;
+        this.digest = digest;
+    }
+
+    /**
+     * Wraps a serialized JSON document.
+     *
+     * @param json                 the JSON document
+     * @param compressionThreshold the size from which the document is compressed; negative to never compress
+     * @return the payload
+     */
+    public static JsonPayload of(byte[] json, int compressionThreshold) {
+        byte[] digest = digest(json);
+        if (compressionThreshold < 0 || json.length < compressionThreshold) {
+            return new JsonPayload(json, false, digest);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] compressedJson = out.toByteArray();
+        // small documents can grow when compressed
+        return compressedJson.length < json.length ? new JsonPayload(compressedJson, true, digest) : new JsonPayload(json, false, digest);
+    }
+
+    /**
+     * @return the first {@value #DIGEST_LENGTH} bytes of the SHA-256 of a JSON document
+     */
+    static byte[] digest(byte[] json) {
+        try {
+            return Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(json), DIGEST_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the body as stored, compressed if {@link #isCompressed()}
+     */
+    byte[] getBody() {
+        return body;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    byte[] getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the strong entity tag of the uncompressed JSON document, quoted
+     */
+    public String etag() {
+        return etag(false);
+    }
+
+    private String etag(boolean gzip) {
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + (gzip ? GZIP_TAG_SUFFIX : "") + "\"";
+    }
+
+    public int size() {
+        return body.length;
+    }
+
+    /**
+     * @return the uncompressed JSON document
+     */
+    public byte[] json() {
+        if (!compressed) {
+            return body;
+        }
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates the response carrying this payload. A compressed payload is sent as is when the client accepts
+     * gzip, and decompressed otherwise.
+     *
+     * @param acceptEncoding the {@code Accept-Encoding} header of the request, may be {@code null}
+     * @param ifNoneMatch    the {@code If-None-Match} header of the request, may be {@code null}
+     * @param cacheControl   the {@code Cache-Control} of the response
+     * @return the response, 304 Not Modified without a body if {@code ifNoneMatch} has the tag of either encoding
+     */
+    public ResponseEntity<byte[]> toResponseEntity(String acceptEncoding, String ifNoneMatch, CacheControl cacheControl) {
+        boolean gzip = compressed && acceptsGzip(acceptEncoding);
+        boolean notModified = matches(ifNoneMatch);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .eTag(etag(gzip))
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (notModified) {
+            return response.build();
+        }
+        response.contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body);
+        }
+        return response.body(json());
+    }
+
+    /**
+     * Compares the tags of an {@code If-None-Match} header with the tag of the payload, weakly as RFC 9110 requires
+     * for this header, and regardless of the encoding the tag was sent with.
+     */
+    boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String etag = etag(false);
+        String gzipEtag = etag(true);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether an {@code Accept-Encoding} header accepts gzip: an explicit {@code gzip} coding decides, else a
+     * {@code *} coding does. A coding with {@code q=0} is not acceptable.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.trim().split(";");
+            String name = parameters[0].trim();
+            if (name.equalsIgnoreCase("gzip")) {
+                return acceptable(parameters);
+            }
+            if (name.equals("*")) {
+                any = acceptable(parameters);
+            }
+        }
+        return any != null && any;
+    }
+
+    private static boolean acceptable(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim()) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
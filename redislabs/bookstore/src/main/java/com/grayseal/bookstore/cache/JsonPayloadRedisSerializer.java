@@ -0,0 +1,49 @@
+package com.grayseal.bookstore.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Arrays;
+
+/**
+ * Stores a {@link JsonPayload} as its body prefixed with one byte telling whether it is compressed, and the
+ * digest of its JSON, so reading it back is a single array copy. Payloads cached without a digest by earlier
+ * versions get it computed when they are read.
+ */
+public class JsonPayloadRedisSerializer implements RedisSerializer<JsonPayload> {
+
+    private static final byte PLAIN = 0;
+    private static final byte GZIP = 1;
+    private static final byte WITH_DIGEST = 2;
+
+    @Override
+    public byte[] serialize(JsonPayload payload) {
+        if (payload == null) {
+            return null;
+        }
+        byte[] body = payload.getBody();
+        byte[] bytes = new byte[1 + JsonPayload.DIGEST_LENGTH + body.length];
+        bytes[0] = (byte) ((payload.isCompressed() ? GZIP : PLAIN) | WITH_DIGEST);
+        System.arraycopy(payload.getDigest(), 0, bytes, 1, JsonPayload.DIGEST_LENGTH);
+        System.arraycopy(body, 0, bytes, 1 + JsonPayload.DIGEST_LENGTH, body.length);
+        return bytes;
+    }
+
+    @Override
+    public JsonPayload deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        boolean compressed = (bytes[0] & GZIP) != 0;
+        if ((bytes[0] & WITH_DIGEST) == 0) {
+            JsonPayload payload = new JsonPayload(Arrays.copyOfRange(bytes, 1, bytes.length), compressed, null);
+            return new JsonPayload(payload.getBody(), compressed, JsonPayload.digest(payload.json()));
+        }
+        int start = 1 + JsonPayload.DIGEST_LENGTH;
+        return new JsonPayload(Arrays.copyOfRange(bytes, start, bytes.length), compressed, Arrays.copyOfRange(bytes, 1, start));
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return JsonPayload.class;
+    }
+}
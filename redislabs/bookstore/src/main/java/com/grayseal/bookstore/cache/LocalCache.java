@@ -0,0 +1,72 @@
+package com.grayseal.bookstore.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size- and TTL-bounded in-process cache used as the first tier of a {@link TwoTierCache}, and in front of
+ * other Redis lookups that are repeated on every request.
+ *
+ * <p>Entries are kept in an access-ordered {@link LinkedHashMap}, so evicting the least recently used entry
+ * when the cache is full is O(1). Expired entries are dropped lazily when they are read.</p>
+ */
+public class LocalCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+    private long evictions;
+
+    public LocalCache(int maxSize, long ttlNanos) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > LocalCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt > 0) {
+            entries.remove(key);
+            evictions++;
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(String key, Object value) {
+        if (maxSize > 0 && value != null) {
+            entries.put(key, new Entry(value, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public synchronized void evict(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    private record Entry(Object value, long expiresAt) {
+    }
+}
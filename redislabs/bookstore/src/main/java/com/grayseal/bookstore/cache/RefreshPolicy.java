@@ -0,0 +1,43 @@
+package com.grayseal.bookstore.cache;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * How a {@link TwoTierCache} refreshes its entries and coordinates the loads of a key.
+ */
+@Getter
+@Builder
+public class RefreshPolicy {
+
+    /**
+     * How long an entry is fresh.
+     */
+    private Duration ttl;
+
+    /**
+     * How long after {@link #ttl} an entry may still be served while it is refreshed in the background. The Redis
+     * entries must live for {@code ttl + staleWhileRevalidate}.
+     */
+    private Duration staleWhileRevalidate;
+
+    /**
+     * How eagerly entries are refreshed before they expire, as the beta of the XFetch algorithm: an entry is
+     * refreshed early with a probability growing as its expiry nears, and sooner for values that are slow to
+     * compute. 0 disables early refresh.
+     */
+    private double earlyRefreshBeta;
+
+    /**
+     * How long the Redis lock taken to load a key is held at most, and how long other instances wait for the
+     * holder to publish the value before loading it themselves.
+     */
+    private Duration lockTtl;
+
+    /**
+     * The number of threads running background refreshes.
+     */
+    private int refreshThreads;
+}
@@ -0,0 +1,365 @@
+package com.grayseal.bookstore.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link Cache} that keeps recently used values in a bounded in-process {@link LocalCache} (L1) in front of
+ * a Redis backed cache (L2).
+ *
+ * <p>L1 hits return the cached object as is, without a network round trip or deserialization. Writes go to
+ * both tiers and are announced through the {@code invalidation} callback so that other instances drop their
+ * L1 copy of the key.</p>
+ *
+ * <p>Values are stored as {@link CacheEntry}s, so their age is known. Loads through
+ * {@link #get(Object, Callable)} (used by {@code @Cacheable(sync = true)}) are protected against stampedes:</p>
+ * <ul>
+ *     <li>concurrent misses of a key in this instance wait for a single load;</li>
+ *     <li>across instances, the load is guarded by a short Redis lock and the other instances wait for the
+ *     value to be published to L2;</li>
+ *     <li>fresh entries are refreshed in the background, with a probability growing as their expiry nears;</li>
+ *     <li>expired entries are still served for {@link RefreshPolicy#getStaleWhileRevalidate()} while a single
+ *     background refresh runs.</li>
+ * </ul>
+ */
+@Slf4j
+public class TwoTierCache implements Cache {
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of(new ClassPathResource("scripts/unlock.lua"), Long.class);
+    private static final long LOCK_POLL_MILLIS = 25;
+
+    private final Cache redisCache;
+    private final LocalCache localCache;
+    private final BiConsumer<String, String> invalidation;
+    private final RefreshPolicy policy;
+    private final StringRedisTemplate redisTemplate;
+    private final Executor refreshExecutor;
+    private final String lockKeyPrefix;
+    private final Map<String, CompletableFuture<CacheEntry>> loads = new ConcurrentHashMap<>();
+
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l1Misses = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder l2Misses = new LongAdder();
+    private final LongAdder remoteInvalidations = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder lockWaits = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    TwoTierCache(Cache redisCache, LocalCache localCache, BiConsumer<String, String> invalidation, RefreshPolicy policy,
+                 StringRedisTemplate redisTemplate, Executor refreshExecutor, String lockKeyPrefix) {
+        this.redisCache = redisCache;
+        this.localCache = localCache;
+        this.invalidation = invalidation;
+        this.policy = policy;
+        this.redisTemplate = redisTemplate;
+        this.refreshExecutor = refreshExecutor;
+        this.lockKeyPrefix = lockKeyPrefix;
+    }
+
+    @Override
+    public String getName() {
+        return redisCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEntry entry = lookup(key);
+        if (entry == null || age(entry) >= policy.getTtl().toMillis()) {
+            return null;
+        }
+        return new SimpleValueWrapper(entry.value());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CacheEntry entry = lookup(key);
+        if (entry != null) {
+            long age = age(entry);
+            long ttl = policy.getTtl().toMillis();
+            if (age < ttl) {
+                if (refreshEarly(entry, ttl - age)) {
+                    earlyRefreshes.increment();
+                    load(key, valueLoader, entry, true);
+                }
+                return (T) entry.value();
+            }
+            if (age < ttl + policy.getStaleWhileRevalidate().toMillis()) {
+                staleHits.increment();
+                load(key, valueLoader, entry, true);
+                return (T) entry.value();
+            }
+        }
+        try {
+            return (T) load(key, valueLoader, entry, false).join().value();
+        } catch (CompletionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        put(key, new CacheEntry(value, System.currentTimeMillis(), 0));
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        String localKey = localKey(key);
+        localCache.evict(localKey);
+        invalidation.accept(getName(), localKey);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.clear();
+        invalidation.accept(getName(), null);
+    }
+
+    /**
+     * Drops a key, or every key when {@code key} is {@code null}, from L1 only. Called when another
+     * instance changed the entry in L2.
+     */
+    void invalidateLocal(String key) {
+        remoteInvalidations.increment();
+        if (key == null) {
+            localCache.clear();
+        } else {
+            localCache.evict(key);
+        }
+    }
+
+    public CacheStats getStats() {
+        return CacheStats.builder()
+                .name(getName())
+                .l1Hits(l1Hits.sum())
+                .l1Misses(l1Misses.sum())
+                .l1Evictions(localCache.evictions())
+                .l1Size(localCache.size())
+                .l2Hits(l2Hits.sum())
+                .l2Misses(l2Misses.sum())
+                .remoteInvalidations(remoteInvalidations.sum())
+                .loads(loadCount.sum())
+                .coalesced(coalesced.sum())
+                .lockWaits(lockWaits.sum())
+                .earlyRefreshes(earlyRefreshes.sum())
+                .staleHits(staleHits.sum())
+                .refreshFailures(refreshFailures.sum())
+                .build();
+    }
+
+    private CacheEntry lookup(Object key) {
+        String localKey = localKey(key);
+        CacheEntry entry = (CacheEntry) localCache.get(localKey);
+        if (entry != null) {
+            l1Hits.increment();
+            return entry;
+        }
+        l1Misses.increment();
+
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper != null && wrapper.get() != null) {
+            l2Hits.increment();
+            entry = (CacheEntry) wrapper.get();
+            localCache.put(localKey, entry);
+            return entry;
+        }
+        l2Misses.increment();
+        return null;
+    }
+
+    private void put(Object key, CacheEntry entry) {
+        redisCache.put(key, entry);
+        String localKey = localKey(key);
+        localCache.put(localKey, entry);
+        invalidation.accept(getName(), localKey);
+    }
+
+    /**
+     * Loads a key unless a load of it is already running, in which case the running load is returned.
+     *
+     * @param previous   the entry being replaced, {@code null} on a miss
+     * @param background whether to load on the refresh executor rather than on the calling thread
+     */
+    private CompletableFuture<CacheEntry> load(Object key, Callable<?> valueLoader, CacheEntry previous, boolean background) {
+        String localKey = localKey(key);
+        CompletableFuture<CacheEntry> load = new CompletableFuture<>();
+        CompletableFuture<CacheEntry> running = loads.putIfAbsent(localKey, load);
+        if (running != null) {
+            if (!background) {
+                coalesced.increment();
+            }
+            return running;
+        }
+
+        Runnable task = () -> {
+            try {
+                load.complete(compute(key, valueLoader, previous, background));
+            } catch (Throwable e) {
+                load.completeExceptionally(e);
+                if (background) {
+                    refreshFailures.increment();
+                    log.warn("Unable to refresh " + getName() + "::" + localKey + ": " + e.getMessage());
+                }
+            } finally {
+                loads.remove(localKey, load);
+            }
+        };
+        if (!background) {
+            task.run();
+            return load;
+        }
+        try {
+            refreshExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // too many refreshes queued: keep serving the current entry
+            loads.remove(localKey, load);
+            load.complete(previous);
+        }
+        return load;
+    }
+
+    private CacheEntry compute(Object key, Callable<?> valueLoader, CacheEntry previous, boolean background) throws Exception {
+        String lockKey = lockKeyPrefix + localKey(key);
+        String token = UUID.randomUUID().toString();
+        boolean locked = lock(lockKey, token);
+        try {
+            if (!locked) {
+                lockWaits.increment();
+                if (background) {
+                    // another instance is refreshing the entry and will announce the new value
+                    return previous;
+                }
+                CacheEntry published = awaitPublished(key, lockKey, previous);
+                if (published != null) {
+                    return published;
+                }
+            }
+            long start = System.nanoTime();
+            Object value = valueLoader.call();
+            CacheEntry entry = new CacheEntry(value, System.currentTimeMillis(),
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            loadCount.increment();
+            if (value != null) {
+                put(key, entry);
+            }
+            return entry;
+        } finally {
+            if (locked) {
+                unlock(lockKey, token);
+            }
+        }
+    }
+
+    /**
+     * Waits for the instance holding the lock to write a newer entry to L2, until the lock is released or the
+     * lock TTL elapses.
+     *
+     * @return the new entry, or {@code null} if none was written
+     */
+    private CacheEntry awaitPublished(Object key, String lockKey, CacheEntry previous) {
+        long deadline = System.nanoTime() + policy.getLockTtl().toNanos();
+        while (System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            // checked before the entry, so an entry written just before the lock is released is not missed
+            boolean released = !Boolean.TRUE.equals(redisTemplate.hasKey(lockKey));
+            ValueWrapper wrapper = redisCache.get(key);
+            CacheEntry entry = wrapper != null ? (CacheEntry) wrapper.get() : null;
+            if (entry != null && (previous == null || entry.createdAt() > previous.createdAt())) {
+                localCache.put(localKey(key), entry);
+                return entry;
+            }
+            if (released) {
+                // the holder failed or its value was evicted
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private boolean lock(String lockKey, String token) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token, policy.getLockTtl()));
+        } catch (RuntimeException e) {
+            // without Redis there is nothing to coordinate with; the single-flight still applies to this instance
+            log.warn("Unable to lock " + lockKey + ": " + e.getMessage());
+            return true;
+        }
+    }
+
+    private void unlock(String lockKey, String token) {
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(lockKey), token);
+        } catch (RuntimeException e) {
+            // the lock expires on its own
+            log.warn("Unable to unlock " + lockKey + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * XFetch: refresh early when the time left, minus a random gap proportional to the compute time, runs out.
+     */
+    private boolean refreshEarly(CacheEntry entry, long millisLeft) {
+        if (policy.getEarlyRefreshBeta() <= 0 || entry.computeMillis() <= 0) {
+            return false;
+        }
+        double gap = entry.computeMillis() * policy.getEarlyRefreshBeta() * -Math.log(ThreadLocalRandom.current().nextDouble());
+        return gap >= millisLeft;
+    }
+
+    private static long age(CacheEntry entry) {
+        return System.currentTimeMillis() - entry.createdAt();
+    }
+
+    /**
+     * RedisCache stores entries under the string form of the key, so L1 does the same to stay consistent
+     * with L2 and with keys received from other instances.
+     */
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
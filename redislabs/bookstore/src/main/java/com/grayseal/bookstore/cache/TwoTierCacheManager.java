@@ -0,0 +1,129 @@
+package com.grayseal.bookstore.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link CacheManager} that layers a bounded in-process cache over a {@link RedisCacheManager}.
+ *
+ * <p>Every write or eviction is published on a Redis pub/sub channel. Other instances subscribed to the same
+ * channel drop the affected key from their in-process tier, so the next read goes to Redis and replicas stay
+ * coherent. Messages published by this instance are ignored when they come back.</p>
+ *
+ * <p>Message format: {@code <instance id>\n<cache name>[\n<key>]}. A message without a key clears the whole
+ * cache.</p>
+ *
+ * <p>Background refreshes of all caches run on a small shared pool with a bounded queue; when it is full,
+ * entries due for a refresh keep being served as they are.</p>
+ */
+@Slf4j
+public class TwoTierCacheManager implements CacheManager, MessageListener {
+
+    private static final String LOCK_KEY_PREFIX = "bookstore:cache:lock:";
+    private static final int REFRESH_QUEUE_SIZE = 100;
+
+    private final RedisCacheManager redisCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final String channel;
+    private final int maxSize;
+    private final Duration ttl;
+    private final RefreshPolicy refreshPolicy;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+
+    public TwoTierCacheManager(RedisCacheManager redisCacheManager, StringRedisTemplate redisTemplate,
+                               RedisMessageListenerContainer listenerContainer, String channel, int maxSize, Duration ttl,
+                               RefreshPolicy refreshPolicy) {
+        this.redisCacheManager = redisCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.channel = channel;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.refreshPolicy = refreshPolicy;
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.refreshExecutor = new ThreadPoolExecutor(refreshPolicy.getRefreshThreads(), refreshPolicy.getRefreshThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE), threadFactory);
+    }
+
+    @PostConstruct
+    void start() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, cacheName -> {
+            Cache redisCache = redisCacheManager.getCache(cacheName);
+            return redisCache == null ? null
+                    : new TwoTierCache(redisCache, new LocalCache(maxSize, ttl.toNanos()), this::publishInvalidation,
+                    refreshPolicy, redisTemplate, refreshExecutor, LOCK_KEY_PREFIX + cacheName + "::");
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    public List<CacheStats> getStats() {
+        return caches.values().stream().map(TwoTierCache::getStats).toList();
+    }
+
+    /**
+     * Stops the background refreshes. Called by Spring when the context closes.
+     */
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n", 3);
+        if (parts.length < 2 || instanceId.equals(parts[0])) {
+            return;
+        }
+        TwoTierCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.invalidateLocal(parts.length == 3 ? parts[2] : null);
+        }
+    }
+
+    private void publishInvalidation(String cacheName, String key) {
+        String message = instanceId + "\n" + cacheName + (key != null ? "\n" + key : "");
+        try {
+            redisTemplate.convertAndSend(channel, message);
+        } catch (RuntimeException e) {
+            // other instances fall back to the local TTL, so a lost message only delays coherence
+            log.warn("Unable to publish cache invalidation for " + cacheName + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.grayseal.bookstore.cache;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+
+/**
+ * Lets Spring Boot bind the metrics of the {@link TwoTierCache}s, as it does for the caches it knows.
+ */
+public class TwoTierCacheMeterBinderProvider implements CacheMeterBinderProvider<TwoTierCache> {
+
+    @Override
+    public MeterBinder getMeterBinder(TwoTierCache cache, Iterable<Tag> tags) {
+        return new TwoTierCacheMetrics(cache, tags);
+    }
+}
@@ -0,0 +1,86 @@
+package com.grayseal.bookstore.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Binds the counters of a {@link TwoTierCache} to a {@link MeterRegistry}.
+ *
+ * <p>The common {@code cache.*} meters describe the cache as a whole: a hit is a hit in either tier, a miss a
+ * miss in both, puts are the values loaded by this instance, and size and evictions are those of the
+ * in-process tier. {@code cache.tier.gets} breaks the hits and misses down per tier, and the remaining meters
+ * count the stampede protection and refresh outcomes described in {@link CacheStats}.</p>
+ */
+public class TwoTierCacheMetrics extends CacheMeterBinder<TwoTierCache> {
+
+    public TwoTierCacheMetrics(TwoTierCache cache, Iterable<Tag> tags) {
+        super(cache, cache.getName(), tags);
+    }
+
+    @Override
+    protected Long size() {
+        TwoTierCache cache = getCache();
+        return cache == null ? null : (long) cache.getStats().getL1Size();
+    }
+
+    @Override
+    protected long hitCount() {
+        TwoTierCache cache = getCache();
+        if (cache == null) {
+            return 0;
+        }
+        CacheStats stats = cache.getStats();
+        return stats.getL1Hits() + stats.getL2Hits();
+    }
+
+    @Override
+    protected Long missCount() {
+        TwoTierCache cache = getCache();
+        return cache == null ? null : cache.getStats().getL2Misses();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        TwoTierCache cache = getCache();
+        return cache == null ? null : cache.getStats().getL1Evictions();
+    }
+
+    @Override
+    protected long putCount() {
+        TwoTierCache cache = getCache();
+        return cache == null ? 0 : cache.getStats().getLoads();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        counter(registry, "cache.tier.gets", "Lookups per tier", Tags.of("tier", "l1", "result", "hit"), CacheStats::getL1Hits);
+        counter(registry, "cache.tier.gets", "Lookups per tier", Tags.of("tier", "l1", "result", "miss"), CacheStats::getL1Misses);
+        counter(registry, "cache.tier.gets", "Lookups per tier", Tags.of("tier", "l2", "result", "hit"), CacheStats::getL2Hits);
+        counter(registry, "cache.tier.gets", "Lookups per tier", Tags.of("tier", "l2", "result", "miss"), CacheStats::getL2Misses);
+        counter(registry, "cache.loads.coalesced", "Misses that waited for a load already running in this instance",
+                Tags.empty(), CacheStats::getCoalesced);
+        counter(registry, "cache.lock.waits", "Loads that waited for another instance holding the lock of the key",
+                Tags.empty(), CacheStats::getLockWaits);
+        counter(registry, "cache.refreshes.early", "Background refreshes started before expiry", Tags.empty(),
+                CacheStats::getEarlyRefreshes);
+        counter(registry, "cache.stale.hits", "Expired entries served while they were refreshed", Tags.empty(),
+                CacheStats::getStaleHits);
+        counter(registry, "cache.refresh.failures", "Background refreshes that failed", Tags.empty(),
+                CacheStats::getRefreshFailures);
+        counter(registry, "cache.remote.invalidations", "Invalidations received from other instances", Tags.empty(),
+                CacheStats::getRemoteInvalidations);
+    }
+
+    private void counter(MeterRegistry registry, String name, String description, Tags tags, ToLongFunction<CacheStats> count) {
+        FunctionCounter.builder(name, getCache(), cache -> count.applyAsLong(cache.getStats()))
+                .tags(getTagsWithCacheName())
+                .tags(tags)
+                .description(description)
+                .register(registry);
+    }
+}
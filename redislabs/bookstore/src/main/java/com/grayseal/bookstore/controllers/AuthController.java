@@ -0,0 +1,101 @@
+package com.grayseal.bookstore.controllers;
+
+import com.grayseal.bookstore.security.BearerTokenFilter;
+import com.grayseal.bookstore.security.PasswordLogin;
+import com.grayseal.bookstore.security.TokenSessions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/auth")
+public class AuthController {
+
+    @Autowired
+    private PasswordLogin passwordLogin;
+
+    @Autowired
+    private TokenSessions tokenSessions;
+
+    /**
+     * The credentials of a login.
+     */
+    public record LoginRequest(String email, String password) {
+    }
+
+    /**
+     * Checks an email and password and starts a session. The password is verified with BCrypt once, here; later
+     * requests send the returned token as {@code Authorization: Bearer <token>} instead.
+     *
+     * @param request the email and password.
+     * @return the token and the seconds it stays valid without use, 401 Unauthorized for wrong credentials, or
+     * 503 Service Unavailable when too many logins are in progress.
+     */
+    @PostMapping("/login")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> login(@RequestBody LoginRequest request) {
+        if (request.email() == null || request.password() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Email and password are required");
+        }
+        try {
+            return passwordLogin.login(request.email(), request.password()).thenApply(token -> token
+                    .map(value -> ResponseEntity.ok(Map.<String, Object>of("token", value, "tokenType", "Bearer",
+                            "expiresIn", tokenSessions.getSessionTtl().toSeconds())))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Invalid email or password"))));
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+
+    /**
+     * Ends the session of the token of the request, on every instance.
+     *
+     * @return 204 No Content, or 401 Unauthorized without a token.
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                       @RequestHeader(HttpHeaders.AUTHORIZATION) String authorization) {
+        requireSession(session);
+        tokenSessions.revoke(authorization.substring("Bearer ".length()).trim());
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Returns the session of the token of the request.
+     *
+     * @return the user id, email and roles, or 401 Unauthorized without a token.
+     */
+    @GetMapping("/me")
+    public TokenSessions.Session me(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session) {
+        return requireSession(session);
+    }
+
+    /**
+     * Returns how many token lookups were answered by the in-process cache rather than by Redis.
+     *
+     * @return the session and cache TTLs, the cached sessions and the lookup counts.
+     */
+    @GetMapping("/stats")
+    public TokenSessions.Stats getStats() {
+        return tokenSessions.stats();
+    }
+
+    private static TokenSessions.Session requireSession(TokenSessions.Session session) {
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "A bearer token is required");
+        }
+        return session;
+    }
+}
@@ -1,20 +1,29 @@
 package com.grayseal.bookstore.controllers;
 
 import com.grayseal.bookstore.models.Book;
-import com.grayseal.bookstore.models.Category;
+import com.grayseal.bookstore.redis.BatchReader;
+import com.grayseal.bookstore.services.BookFilterIndex;
+import com.grayseal.bookstore.services.BookIdFilter;
+import com.grayseal.bookstore.services.BookImporter;
+import com.grayseal.bookstore.services.BookRecommendations;
+import com.grayseal.bookstore.services.BookSearchIndex;
+import com.grayseal.bookstore.services.BookSortIndex;
+import com.grayseal.bookstore.services.CatalogResponses;
+import com.grayseal.bookstore.services.RatingAggregates;
 import com.grayseal.bookstore.repositories.BookRepository;
-import com.grayseal.bookstore.repositories.CategoryRepository;
+import com.grayseal.bookstore.security.BearerTokenFilter;
+import com.grayseal.bookstore.security.TokenSessions;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 @RestController
@@ -25,46 +34,259 @@ public class BookController {
     private BookRepository bookRepository;
 
     @Autowired
-    private CategoryRepository categoryRepository;
+    private CatalogResponses catalogResponses;
+
+    @Autowired
+    private BatchReader batchReader;
+
+    @Autowired
+    private BookSortIndex bookSortIndex;
+
+    @Autowired
+    private RatingAggregates ratingAggregates;
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private BookFilterIndex bookFilterIndex;
+
+    @Autowired
+    private BookRecommendations bookRecommendations;
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Autowired
+    private BookImporter bookImporter;
+
+    @Value("${app.books.maxBatchSize:100}")
+    private Integer maxBatchSize;
 
     /**
      * Retrieves a paginated list of books.
-     * Caches the result to avoid hitting the database on repeated requests with the same parameters.
+     * Caches the serialized JSON of the page, so repeated requests with the same parameters are written straight from the cache.
      *
-     * @param page the page number to retrieve (default is 0).
-     * @param size the number of items per page (default is 10).
-     * @return a ResponseEntity containing the paginated books, page number, total pages, and total elements.
+     * @param page           the page number to retrieve (default is 0).
+     * @param size           the number of items per page (default is 10).
+     * @param acceptEncoding the encodings accepted by the client; large pages are sent gzip compressed when it accepts gzip.
+     * @param ifNoneMatch    the ETags of the pages the client has; when the page still has one of them, 304 Not Modified is returned without a body.
+     * @return a ResponseEntity containing the paginated books, page number, total pages, and total elements, with its ETag and Cache-Control.
      */
-    @Cacheable(value = "booksCache", key = "#page + '-' + #size")
     @GetMapping("/books")
-    public ResponseEntity<Map<String, Object>> getBooks(@RequestParam(defaultValue = "0") Integer page, @RequestParam(defaultValue = "10") Integer size) {
-        Pageable paging = PageRequest.of(page, size);
-        Page<Book> pagedResult = bookRepository.findAll(paging);
-        List<Book> books = pagedResult.hasContent() ? pagedResult.getContent() : Collections.emptyList();
+    public ResponseEntity<byte[]> getBooks(@RequestParam(defaultValue = "0") Integer page, @RequestParam(defaultValue = "10") Integer size,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return catalogResponses.books(page, size).toResponseEntity(acceptEncoding, ifNoneMatch, catalogResponses.cacheControl());
+    }
+
+    /**
+     * Retrieves a page of books sorted by title, price or page count, using keyset pagination.
+     * Each page is served from a sorted-set index in O(log n + size), however deep the page is.
+     *
+     * @param sort   the field to sort by: title, price or pageCount (default is title).
+     * @param order  the sort order, asc or desc (default is asc).
+     * @param size   the number of items per page (default is 10).
+     * @param cursor the opaque cursor returned with the previous page; omitted for the first page.
+     * @return a ResponseEntity containing the books and the cursor of the next page, null on the last page.
+     */
+    @GetMapping("/browse")
+    public ResponseEntity<Map<String, Object>> browse(@RequestParam(defaultValue = "title") String sort,
+                                                      @RequestParam(defaultValue = "asc") String order,
+                                                      @RequestParam(defaultValue = "10") Integer size,
+                                                      @RequestParam(required = false) String cursor) {
+        if (size < 1 || size > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be between 1 and " + maxBatchSize);
+        }
+        BookSortIndex.BookPage page;
+        try {
+            page = bookSortIndex.page(BookSortIndex.SortField.of(sort), "desc".equalsIgnoreCase(order), cursor, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("books", page.books());
+        response.put("next", page.next());
+
+        return new ResponseEntity<>(response, new HttpHeaders(), HttpStatus.OK);
+    }
+
+    /**
+     * Retrieves a page of the books in any of the given categories, by any of the given authors and in any of the given languages.
+     * Criteria that are omitted are not filtered on; authors and languages are matched case insensitively.
+     * The filter is evaluated in Redis over per-value index sets, and its result kept for a short time, so further pages are read from it.
+     *
+     * @param category the category ids.
+     * @param author   the authors.
+     * @param language the languages, such as en.
+     * @param page     the page number to retrieve (default is 0).
+     * @param size     the number of items per page (default is 10).
+     * @return a ResponseEntity containing the matching books sorted by ISBN, page number, total pages, and total elements.
+     */
+    @GetMapping("/filter")
+    public ResponseEntity<Map<String, Object>> filter(@RequestParam(required = false) List<String> category,
+                                                      @RequestParam(required = false) List<String> author,
+                                                      @RequestParam(required = false) List<String> language,
+                                                      @RequestParam(defaultValue = "0") Integer page,
+                                                      @RequestParam(defaultValue = "10") Integer size) {
+        if (page < 0 || size < 1 || size > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be between 1 and " + maxBatchSize);
+        }
+        BookFilterIndex.FilterPage result;
+        try {
+            result = bookFilterIndex.filter(category, author, language, (long) page * size, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("books", result.books());
+        response.put("page", page);
+        response.put("pages", (result.total() + size - 1) / size);
+        response.put("total", result.total());
+
+        return new ResponseEntity<>(response, new HttpHeaders(), HttpStatus.OK);
+    }
+
+    /**
+     * Searches the titles, subtitles, authors and descriptions of the books.
+     * Served from an in-memory inverted index, without a round trip to Redis.
+     * The last word of the query also matches longer words starting with it, so partial input can be searched as it is typed.
+     *
+     * @param q     the words to search for.
+     * @param limit the maximum number of books to return (default is 10).
+     * @return a ResponseEntity containing the matching books, best match first, and the search time in microseconds.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(@RequestParam("q") String q, @RequestParam(defaultValue = "10") Integer limit) {
+        if (limit < 1 || limit > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + maxBatchSize);
+        }
+        long start = System.nanoTime();
+        List<BookSearchIndex.SearchHit> hits = bookSearchIndex.search(q, limit);
 
         Map<String, Object> response = new HashMap<>();
-        response.put("books", books);
-        response.put("page", pagedResult.getNumber());
-        response.put("pages", pagedResult.getTotalPages());
-        response.put("total", pagedResult.getTotalElements());
+        response.put("books", hits);
+        response.put("tookMicros", (System.nanoTime() - start) / 1000);
 
         return new ResponseEntity<>(response, new HttpHeaders(), HttpStatus.OK);
     }
 
+    /**
+     * Retrieves the size of the Bloom filter of the book ids, its false-positive rate, and how many lookups it answered without Redis.
+     *
+     * @return the configured and expected false-positive rates, the number of bits and hash functions, the memory used in bytes, and the lookup counters.
+     */
+    @GetMapping("/bloom/stats")
+    public BookIdFilter.Stats getBloomStats() {
+        return bookIdFilter.stats();
+    }
+
+    /**
+     * Retrieves the size of the search index and an estimate of the heap it uses.
+     *
+     * @return the number of indexed books, terms and postings, and the estimated size in bytes.
+     */
+    @GetMapping("/search/stats")
+    public BookSearchIndex.IndexStats getSearchStats() {
+        return bookSearchIndex.stats();
+    }
+
     /**
      * Retrieves all categories.
-     * Caches the result to avoid hitting the database on repeated requests.
+     * Caches the serialized JSON of the categories, so repeated requests are written straight from the cache.
      *
-     * @return an Iterable of categories.
+     * @param acceptEncoding the encodings accepted by the client.
+     * @param ifNoneMatch    the ETags of the categories the client has; when they are unchanged, 304 Not Modified is returned without a body.
+     * @return a ResponseEntity containing the categories, with their ETag and Cache-Control.
      */
-    @Cacheable(value = "categoriesCache")
     @GetMapping("/categories")
-    public Iterable<Category> getCategories() {
-        return categoryRepository.findAll();
+    public ResponseEntity<byte[]> getCategories(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return catalogResponses.categories().toResponseEntity(acceptEncoding, ifNoneMatch, catalogResponses.cacheControl());
+    }
+
+    /**
+     * Retrieves several books by ISBN in one request.
+     * The books and their distinct categories are loaded in two pipelined round trips, whatever the number of books.
+     *
+     * @param isbns the ISBNs of the books to retrieve (at most {@code app.books.maxBatchSize}).
+     * @return the books that exist, in the order requested.
+     */
+    @GetMapping
+    public List<Book> getAll(@RequestParam("isbn") List<String> isbns) {
+        if (isbns.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxBatchSize + " ISBNs per request");
+        }
+        return batchReader.findAllById(Book.class, isbns);
+    }
+
+    /**
+     * Retrieves the best rated books, ranked by a Bayesian average of their ratings.
+     * Served from a sorted-set leaderboard in a single round trip.
+     *
+     * @param limit the number of books to return (default is 10).
+     * @return the top rated books with their rating count and average.
+     */
+    @GetMapping("/top")
+    public List<RatingAggregates.RatingSummary> getTopRated(@RequestParam(defaultValue = "10") Integer limit) {
+        if (limit < 1 || limit > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + maxBatchSize);
+        }
+        return ratingAggregates.top(limit);
+    }
+
+    /**
+     * Retrieves the rating count, average and star histogram of a book.
+     *
+     * @param isbn the ISBN of the book.
+     * @return the rating aggregates of the book.
+     */
+    @GetMapping("/{isbn}/rating")
+    public RatingAggregates.RatingSummary getRating(@PathVariable("isbn") String isbn) {
+        return ratingAggregates.summary(isbn);
+    }
+
+    /**
+     * Retrieves the books most often rated highly by the readers who rated a book highly.
+     * Served from a precomputed sorted set of the book in a single round trip.
+     *
+     * @param isbn  the ISBN of the book.
+     * @param limit the number of books to return (default is 10).
+     * @return the ISBNs of the books with the number of readers who rated both highly, most shared readers first.
+     */
+    @GetMapping("/{isbn}/similar")
+    public List<BookRecommendations.SimilarBook> getSimilar(@PathVariable("isbn") String isbn, @RequestParam(defaultValue = "10") Integer limit) {
+        if (limit < 1 || limit > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + maxBatchSize);
+        }
+        return bookRecommendations.similar(isbn, limit);
+    }
+
+    /**
+     * Imports books from newline-delimited JSON, one book per line in the format the API serves them, for catalogs of any size.
+     * The body is parsed as it arrives and written in pipelined batches; reading slows down when Redis falls behind, so memory stays bounded.
+     * Categories are matched by id or name, and created when missing. Existing books are overwritten.
+     * Only administrators can import: the request needs the bearer token of a user with the admin role.
+     *
+     * @param body the NDJSON request body.
+     * @return the number of lines read, books imported and lines rejected, with the first errors and their line numbers;
+     * 401 Unauthorized without a bearer token, or 403 Forbidden for a user who is not an administrator.
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "application/jsonl", MediaType.TEXT_PLAIN_VALUE})
+    public BookImporter.ImportResult importBooks(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                                 InputStream body) throws IOException {
+        requireAdmin(session, "import books");
+        return bookImporter.importBooks(body);
     }
 
     @GetMapping("/{isbn}")
     public Book get(@PathVariable("isbn") String isbn) {
+        // most unknown ISBNs are answered without a round trip
+        if (!bookIdFilter.mightExist(isbn)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
         Optional<Book> book = bookRepository.findById(isbn);
         if (book.isPresent()) {
             return book.get();
@@ -72,4 +294,13 @@ public class BookController {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND);
         }
     }
+
+    private static void requireAdmin(TokenSessions.Session session, String action) {
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "A bearer token is required");
+        }
+        if (!session.roles().contains("admin")) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only administrators can " + action);
+        }
+    }
 }
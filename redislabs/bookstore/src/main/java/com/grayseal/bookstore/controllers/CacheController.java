@@ -0,0 +1,28 @@
+package com.grayseal.bookstore.controllers;
+
+import com.grayseal.bookstore.cache.CacheStats;
+import com.grayseal.bookstore.cache.TwoTierCacheManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/cache")
+public class CacheController {
+
+    @Autowired
+    private TwoTierCacheManager cacheManager;
+
+    /**
+     * Retrieves the per-tier hit and miss counters of every cache used so far.
+     *
+     * @return a list of cache statistics, one entry per cache.
+     */
+    @GetMapping("/stats")
+    public List<CacheStats> getStats() {
+        return cacheManager.getStats();
+    }
+}
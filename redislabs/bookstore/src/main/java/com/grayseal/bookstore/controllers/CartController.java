@@ -0,0 +1,182 @@
+package com.grayseal.bookstore.controllers;
+
+import com.grayseal.bookstore.security.BearerTokenFilter;
+import com.grayseal.bookstore.security.TokenSessions;
+import com.grayseal.bookstore.services.ShoppingCart;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cart of the user of the bearer token of the request; the cart and order endpoints answer 401 Unauthorized
+ * without one.
+ */
+@RestController
+@RequestMapping("/api/cart")
+public class CartController {
+
+    @Value("${app.cart.maxQuantity:100}")
+    private Long maxQuantity;
+
+    @Autowired
+    private ShoppingCart shoppingCart;
+
+    /**
+     * A number of copies of a book.
+     */
+    public record CartItemRequest(String bookId, Long quantity) {
+    }
+
+    /**
+     * @param expectedTotal the total shown with the cart, or {@code null} to accept the current prices
+     */
+    public record CheckoutRequest(BigDecimal expectedTotal) {
+    }
+
+    /**
+     * The number of copies of a book in stock.
+     */
+    public record StockRequest(Long stock) {
+    }
+
+    /**
+     * Returns the books in the cart, with their current prices.
+     *
+     * @return the books, their quantities, and the total of the cart.
+     */
+    @GetMapping
+    public ShoppingCart.Cart getCart(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session) {
+        return shoppingCart.get(requireSession(session).userId());
+    }
+
+    /**
+     * Adds copies of a book to the cart.
+     *
+     * @param request the book id and the number of copies, 1 by default; more than {@code app.cart.maxQuantity}
+     *                copies count as that many.
+     * @return the quantity of the book in the cart, 400 Bad Request for a quantity below 1, or 404 Not Found for an
+     * unknown book.
+     */
+    @PostMapping("/items")
+    public Map<String, Object> addItem(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                       @RequestBody CartItemRequest request) {
+        String userId = requireSession(session).userId();
+        long quantity = request.quantity() == null ? 1 : request.quantity();
+        if (request.bookId() == null || quantity < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A book id and a quantity of at least 1 are required");
+        }
+        // capped before the script adds it, so the quantity in the cart cannot overflow
+        long total = shoppingCart.add(userId, request.bookId(), Math.min(quantity, maxQuantity));
+        if (total < 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No book with id " + request.bookId());
+        }
+        return Map.of("bookId", request.bookId(), "quantity", total);
+    }
+
+    /**
+     * Removes copies of a book from the cart.
+     *
+     * @param bookId   the book id.
+     * @param quantity the number of copies to remove; all of them when omitted.
+     * @return the quantity of the book left in the cart.
+     */
+    @DeleteMapping("/items/{bookId}")
+    public Map<String, Object> removeItem(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                          @PathVariable String bookId, @RequestParam(required = false) Long quantity) {
+        String userId = requireSession(session).userId();
+        if (quantity != null && quantity < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity must be at least 1");
+        }
+        return Map.of("bookId", bookId, "quantity", shoppingCart.remove(userId, bookId, quantity));
+    }
+
+    /**
+     * Orders the books in the cart, atomically: either every book is taken from the stock and the cart emptied,
+     * or nothing changes.
+     *
+     * @param request the total the user expects to pay; optional.
+     * @return 201 Created with the order, 400 Bad Request for an empty cart, or 409 Conflict with the books
+     * unavailable or out of stock, or the current total if prices changed.
+     */
+    @PostMapping("/checkout")
+    public ResponseEntity<ShoppingCart.Checkout> checkout(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                                          @RequestBody(required = false) CheckoutRequest request) {
+        String userId = requireSession(session).userId();
+        ShoppingCart.Checkout checkout = shoppingCart.checkout(userId, request == null ? null : request.expectedTotal());
+        HttpStatus status = checkout.succeeded() ? HttpStatus.CREATED
+                : "EMPTY".equals(checkout.status()) ? HttpStatus.BAD_REQUEST : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(checkout);
+    }
+
+    /**
+     * Returns the orders of the user.
+     *
+     * @param limit the maximum number of orders, newest first.
+     * @return the orders.
+     */
+    @GetMapping("/orders")
+    public List<ShoppingCart.Order> getOrders(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                              @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be at least 1");
+        }
+        return shoppingCart.orders(requireSession(session).userId(), limit);
+    }
+
+    /**
+     * Returns the copies of a book left in stock.
+     *
+     * @param bookId the book id.
+     * @return the stock of the book.
+     */
+    @GetMapping("/stock/{bookId}")
+    public Map<String, Object> getStock(@PathVariable String bookId) {
+        return Map.of("bookId", bookId, "stock", shoppingCart.stock(bookId));
+    }
+
+    /**
+     * Sets the copies of a book in stock. Only administrators can restock.
+     *
+     * @param bookId  the book id.
+     * @param request the number of copies in stock.
+     * @return the stock of the book, 400 Bad Request for a negative stock, 403 Forbidden for a user who is not an
+     * administrator, or 404 Not Found for an unknown book.
+     */
+    @PutMapping("/stock/{bookId}")
+    public Map<String, Object> setStock(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                        @PathVariable String bookId, @RequestBody StockRequest request) {
+        if (!requireSession(session).roles().contains("admin")) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only administrators can set the stock");
+        }
+        if (request.stock() == null || request.stock() < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A stock of at least 0 is required");
+        }
+        if (!shoppingCart.setStock(bookId, request.stock())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No book with id " + bookId);
+        }
+        return Map.of("bookId", bookId, "stock", request.stock());
+    }
+
+    private static TokenSessions.Session requireSession(TokenSessions.Session session) {
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "A bearer token is required");
+        }
+        return session;
+    }
+}
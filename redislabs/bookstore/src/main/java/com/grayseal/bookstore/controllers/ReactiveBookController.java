@@ -0,0 +1,86 @@
+package com.grayseal.bookstore.controllers;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.Category;
+import com.grayseal.bookstore.redis.ReactiveBatchReader;
+import com.grayseal.bookstore.services.BookIdFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Non-blocking variant of the catalog lookups of {@link BookController}, served on the reactive Redis
+ * connection. No request thread waits for Redis: the response is written when the reply arrives.
+ */
+@RestController
+@RequestMapping("/api/reactive/books")
+public class ReactiveBookController {
+
+    @Autowired
+    private ReactiveBatchReader reactiveBatchReader;
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Value("${app.books.maxBatchSize:100}")
+    private Integer maxBatchSize;
+
+    @Value("${app.reactive.chunkSize:500}")
+    private Integer chunkSize;
+
+    /**
+     * Streams every book as newline-delimited JSON.
+     * Books are loaded chunk by chunk as the client reads them, so a slow client slows down the reads instead of filling the heap.
+     *
+     * @return the books, in no particular order.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Book> streamBooks() {
+        return reactiveBatchReader.findAll(Book.class, chunkSize);
+    }
+
+    /**
+     * Retrieves all categories.
+     *
+     * @return the categories, in no particular order.
+     */
+    @GetMapping("/categories")
+    public Flux<Category> getCategories() {
+        return reactiveBatchReader.findAll(Category.class, chunkSize);
+    }
+
+    /**
+     * Retrieves several books by ISBN in one request.
+     *
+     * @param isbns the ISBNs of the books to retrieve (at most {@code app.books.maxBatchSize}).
+     * @return the books that exist, in the order requested.
+     */
+    @GetMapping
+    public Flux<Book> getAll(@RequestParam("isbn") List<String> isbns) {
+        if (isbns.size() > maxBatchSize) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxBatchSize + " ISBNs per request"));
+        }
+        return reactiveBatchReader.findAllById(Book.class, isbns, new HashMap<>());
+    }
+
+    @GetMapping("/{isbn}")
+    public Mono<Book> get(@PathVariable("isbn") String isbn) {
+        if (!bookIdFilter.mightExist(isbn)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        }
+        return reactiveBatchReader.findById(Book.class, isbn)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
+    }
+}
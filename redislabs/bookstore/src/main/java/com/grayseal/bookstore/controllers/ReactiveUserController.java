@@ -0,0 +1,47 @@
+package com.grayseal.bookstore.controllers;
+
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.ReactiveBatchReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+
+/**
+ * Non-blocking variant of the user lookups of {@link UserController}, served on the reactive Redis connection.
+ */
+@RestController
+@RequestMapping("/api/reactive/users")
+public class ReactiveUserController {
+
+    @Autowired
+    private ReactiveBatchReader reactiveBatchReader;
+
+    @Value("${app.users.chunkSize:500}")
+    private Integer chunkSize;
+
+    @GetMapping(params = "email")
+    public Flux<User> getUsers(@RequestParam String email) {
+        return reactiveBatchReader.findIdsBy(User.class, "email", email)
+                .take(1)
+                .collectList()
+                .flatMapMany(ids -> reactiveBatchReader.findAllById(User.class, ids, new HashMap<>()));
+    }
+
+    /**
+     * Streams every user as newline-delimited JSON.
+     * Users are scanned and loaded chunk by chunk as the client reads them, and roles are resolved once for the whole stream.
+     *
+     * @return the users, in no particular order.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<User> streamUsers() {
+        return reactiveBatchReader.findAll(User.class, chunkSize);
+    }
+}
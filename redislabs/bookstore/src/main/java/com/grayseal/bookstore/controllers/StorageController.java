@@ -0,0 +1,65 @@
+package com.grayseal.bookstore.controllers;
+
+import com.grayseal.bookstore.security.BearerTokenFilter;
+import com.grayseal.bookstore.security.TokenSessions;
+import com.grayseal.bookstore.services.StorageReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/storage")
+public class StorageController {
+
+    @Autowired
+    private StorageReport storageReport;
+
+    /**
+     * Measures the memory taken by the book and user hashes, as stored and in the default and compact layouts.
+     *
+     * @param sample the number of entities to measure per type; defaults to {@code app.storage.report.sample}.
+     * @return the average and projected sizes per entity type, and the listpack limits of the server.
+     */
+    @GetMapping("/report")
+    public StorageReport.Report getReport(@RequestParam(required = false) Integer sample) {
+        return storageReport.report(sample);
+    }
+
+    /**
+     * Saves every entity of a type again in the configured layout, after {@code app.storage.compact.enabled} changed.
+     * Only administrators can rewrite: the request needs the bearer token of a user with the admin role.
+     *
+     * @param type the entity type, {@code book} or {@code user}.
+     * @return the number of entities rewritten, 400 Bad Request for an unknown type, 401 Unauthorized without a bearer
+     * token, or 403 Forbidden for a user who is not an administrator.
+     */
+    @PostMapping("/rewrite/{type}")
+    public ResponseEntity<Map<String, Object>> rewrite(@RequestAttribute(name = BearerTokenFilter.SESSION_ATTRIBUTE, required = false) TokenSessions.Session session,
+                                                       @PathVariable String type) {
+        requireAdmin(session, "rewrite the stored entities");
+        try {
+            return ResponseEntity.ok(Map.of("type", type, "rewritten", storageReport.rewrite(type)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static void requireAdmin(TokenSessions.Session session, String action) {
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "A bearer token is required");
+        }
+        if (!session.roles().contains("admin")) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only administrators can " + action);
+        }
+    }
+}
@@ -2,11 +2,17 @@ package com.grayseal.bookstore.controllers;
 
 import com.grayseal.bookstore.models.User;
 import com.grayseal.bookstore.repositories.UserRepository;
+import com.grayseal.bookstore.services.UserListing;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Collections;
 import java.util.List;
@@ -19,13 +25,47 @@ public class UserController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserListing userListing;
+
+    /**
+     * Looks up a user by email. An empty email is not looked up: the request is served by {@link #listUsers}, as
+     * before the listing was streamed.
+     *
+     * @param email the email.
+     * @return the user with this email, or an empty array.
+     */
+    @GetMapping(params = {"email", "email!="})
+    public Iterable<User> getUsers(@RequestParam String email) {
+        Optional<User> user = Optional.ofNullable(userRepository.findFirstByEmail(email));
+        return user.isPresent() ? List.of(user.get()) : Collections.emptyList();
+    }
+
+    /**
+     * Lists users, streaming them to the response chunk by chunk so memory use does not grow with the number of users.
+     * Without parameters every user is written as a JSON array.
+     * With a limit or a cursor, a page is written as an object holding the users and the cursor of the next page.
+     *
+     * @param cursor the cursor returned with the previous page; omitted for the first page.
+     * @param limit  the maximum number of users in the page.
+     * @return a ResponseEntity streaming the users.
+     */
     @GetMapping
-    public Iterable<User> getUsers(@RequestParam(defaultValue = "") String email) {
-        if (email.isEmpty()) {
-            return userRepository.findAll();
-        } else {
-            Optional<User> user = Optional.ofNullable(userRepository.findFirstByEmail(email));
-            return user.isPresent() ? List.of(user.get()) : Collections.emptyList();
+    public ResponseEntity<StreamingResponseBody> listUsers(@RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) Integer limit) {
+        if (cursor == null && limit == null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(userListing::writeAll);
+        }
+        if (limit != null && limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be at least 1");
+        }
+        UserListing.Position from;
+        try {
+            from = cursor == null ? UserListing.Position.START : UserListing.Position.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
+        int pageSize = limit == null ? Integer.MAX_VALUE : limit;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(out -> userListing.writePage(out, from, pageSize));
     }
 }
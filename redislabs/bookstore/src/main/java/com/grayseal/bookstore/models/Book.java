@@ -1,5 +1,8 @@
 package com.grayseal.bookstore.models;
 
+import com.grayseal.bookstore.redis.CompactField;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -45,22 +48,37 @@ import java.util.Set;
 public class Book {
 
     @Id
+    @NotBlank
     @EqualsAndHashCode.Include
     private String id;
 
+    @NotBlank
+    @CompactField("t")
     private String title;
+    @CompactField("st")
     private String subtitle;
+    @CompactField(value = "d", packed = true)
     private String description;
+    @CompactField("l")
     private String language;
+    @PositiveOrZero
+    @CompactField("pc")
     private Long pageCount;
+    @CompactField(value = "th", packed = true)
     private String thumbnail;
+    @PositiveOrZero
+    @CompactField("p")
     private Double price;
+    @CompactField("cu")
     private String currency;
+    @CompactField(value = "il", packed = true)
     private String infoLink;
 
+    @CompactField("a")
     private Set<String> authors;
 
     @Reference
+    @CompactField("c")
     private Set<Category> categories = new HashSet<Category>();
 
     public void addCategory(Category category) {
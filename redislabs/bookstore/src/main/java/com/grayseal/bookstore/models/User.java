@@ -1,6 +1,7 @@
 package com.grayseal.bookstore.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.grayseal.bookstore.redis.CompactField;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
@@ -56,6 +57,7 @@ public class User {
     @NotNull
     @Size(min = 2, max = 48)
     @ToString.Include
+    @CompactField("n")
     private String name;
 
     /**
@@ -69,6 +71,7 @@ public class User {
     @EqualsAndHashCode.Include
     @ToString.Include
     @Indexed
+    @CompactField("e")
     private String email;
 
     /**
@@ -78,6 +81,7 @@ public class User {
      * user for security reasons.</p>
      */
     @NotNull
+    @CompactField("pw")
     private String password;
 
     /**
@@ -97,6 +101,7 @@ public class User {
      * set.</p>
      */
     @Reference
+    @CompactField("r")
     private Set<Role> roles = new HashSet<Role>();
 
     /**
@@ -0,0 +1,223 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.CollectionFactory;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.core.mapping.RedisPersistentProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads {@code @RedisHash} entities by id in a constant number of pipelined round trips.
+ *
+ * <p>{@code CrudRepository.findById} reads one hash per call and resolves every {@code @Reference} with a
+ * further lookup. This reader fetches all requested hashes in one pipeline, collects the distinct references
+ * of the whole batch, fetches those in a second pipeline, and only then converts the entities with the
+ * repositories' {@link RedisConverter}. References are resolved one level deep.</p>
+ */
+@Component
+public class BatchReader {
+
+    @Autowired
+    private RedisKeyValueAdapter redisKeyValueAdapter;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * Finds entities by id, resolving their references in bulk.
+     *
+     * @param type the entity type
+     * @param ids  the ids to look up; duplicates are loaded once
+     * @return the entities that exist, in the order of the given ids
+     */
+    public <T> List<T> findAllById(Class<T> type, Collection<String> ids) {
+        return findAllById(type, ids, true);
+    }
+
+    /**
+     * Finds entities by id.
+     *
+     * @param type               the entity type
+     * @param ids                the ids to look up; duplicates are loaded once
+     * @param resolveReferences  whether to load referenced entities; when {@code false} reference properties
+     *                           keep their default value and only one round trip is made
+     * @return the entities that exist, in the order of the given ids
+     */
+    public <T> List<T> findAllById(Class<T> type, Collection<String> ids, boolean resolveReferences) {
+        return findAllById(type, ids, resolveReferences ? new HashMap<>() : null);
+    }
+
+    /**
+     * Finds entities by id, reusing references resolved by earlier calls. Meant for reading a large number of
+     * entities chunk by chunk when they share a few references, such as users and their roles: each distinct
+     * reference is then fetched once for all chunks.
+     *
+     * @param type               the entity type
+     * @param ids                the ids to look up; duplicates are loaded once
+     * @param resolvedReferences the referenced entities already resolved, by {@code keyspace:id}; references
+     *                           fetched by this call are added to it. When {@code null} references are not resolved
+     * @return the entities that exist, in the order of the given ids
+     */
+    public <T> List<T> findAllById(Class<T> type, Collection<String> ids, Map<String, Object> resolvedReferences) {
+        boolean resolveReferences = resolvedReferences != null;
+        RedisConverter converter = redisKeyValueAdapter.getConverter();
+        RedisPersistentEntity<?> entity = converter.getMappingContext().getRequiredPersistentEntity(type);
+        List<RedisPersistentProperty> references = references(entity);
+
+        // first round trip: the entity hashes
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Map<byte[], byte[]>> hashes = hashes(distinctIds.stream()
+                .map(id -> redisKeyValueAdapter.createKey(entity.getKeySpace(), id)).toList());
+
+        List<RedisData> found = new ArrayList<>();
+        List<Map<RedisPersistentProperty, List<String>>> referenceKeys = new ArrayList<>();
+        Map<String, Class<?>> referenceTypes = new LinkedHashMap<>();
+        for (int i = 0; i < distinctIds.size(); i++) {
+            if (hashes.get(i) == null || hashes.get(i).isEmpty()) {
+                continue;
+            }
+            RedisData rdo = new RedisData(hashes.get(i));
+            rdo.setId(distinctIds.get(i));
+            rdo.setKeyspace(entity.getKeySpace());
+            expand(converter, type, rdo);
+
+            Map<RedisPersistentProperty, List<String>> keys = extractReferences(rdo.getBucket(), references);
+            keys.forEach((property, values) -> values.forEach(key -> referenceTypes.put(key, property.getActualType())));
+            found.add(rdo);
+            referenceKeys.add(keys);
+        }
+
+        // second round trip: every distinct reference of the batch not resolved yet
+        Map<String, Object> resolved = resolveReferences ? resolvedReferences : Map.of();
+        if (resolveReferences) {
+            referenceTypes.keySet().removeAll(resolvedReferences.keySet());
+            resolvedReferences.putAll(resolve(referenceTypes, converter));
+        }
+
+        List<T> result = new ArrayList<>(found.size());
+        for (int i = 0; i < found.size(); i++) {
+            T bean = converter.read(type, found.get(i));
+            result.add(resolveReferences ? setReferences(entity, bean, referenceKeys.get(i), resolved) : bean);
+        }
+        return result;
+    }
+
+    static List<RedisPersistentProperty> references(RedisPersistentEntity<?> entity) {
+        List<RedisPersistentProperty> references = new ArrayList<>();
+        entity.forEach(property -> {
+            if (property.isAssociation()) {
+                references.add(property);
+            }
+        });
+        return references;
+    }
+
+    /**
+     * Converts a hash stored in the {@link CompactLayout} to the default one, so its references can be extracted.
+     */
+    static void expand(RedisConverter converter, Class<?> type, RedisData rdo) {
+        if (converter instanceof CompactRedisConverter compactConverter) {
+            compactConverter.expand(type, rdo);
+        }
+    }
+
+    /**
+     * Removes the reference entries from the bucket, so the converter does not resolve them one by one, and
+     * returns the referenced keys ({@code keyspace:id}) per property.
+     */
+    static Map<RedisPersistentProperty, List<String>> extractReferences(Bucket bucket, List<RedisPersistentProperty> references) {
+        Map<RedisPersistentProperty, List<String>> keys = new HashMap<>();
+        for (RedisPersistentProperty property : references) {
+            String path = property.getName();
+            List<String> values = new ArrayList<>();
+            for (String field : Set.copyOf(bucket.keySet())) {
+                if (field.equals(path) || field.startsWith(path + ".")) {
+                    values.add(new String(bucket.get(field), Bucket.CHARSET));
+                    bucket.remove(field);
+                }
+            }
+            if (!values.isEmpty()) {
+                keys.put(property, values);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Sets the reference properties of an entity read without them from the resolved references; missing
+     * references are left out.
+     */
+    static <T> T setReferences(RedisPersistentEntity<?> entity, T bean, Map<RedisPersistentProperty, List<String>> referenceKeys,
+                               Map<String, Object> resolved) {
+        PersistentPropertyAccessor<T> accessor = entity.getPropertyAccessor(bean);
+        referenceKeys.forEach((property, keys) -> {
+            if (property.isCollectionLike()) {
+                Collection<Object> values = CollectionFactory.createCollection(property.getType(), property.getActualType(), keys.size());
+                keys.stream().map(resolved::get).filter(value -> value != null).forEach(values::add);
+                accessor.setProperty(property, values);
+            } else {
+                accessor.setProperty(property, resolved.get(keys.get(0)));
+            }
+        });
+        return accessor.getBean();
+    }
+
+    /**
+     * Reads a referenced entity from its hash.
+     *
+     * @param key the key of the hash, {@code keyspace:id}
+     */
+    static Object readReference(RedisConverter converter, Class<?> type, String key, Map<byte[], byte[]> hash) {
+        int separator = key.indexOf(':');
+        RedisData rdo = new RedisData(hash);
+        rdo.setKeyspace(key.substring(0, separator));
+        rdo.setId(key.substring(separator + 1));
+        return converter.read(type, rdo);
+    }
+
+    private Map<String, Object> resolve(Map<String, Class<?>> referenceTypes, RedisConverter converter) {
+        List<String> keys = new ArrayList<>(referenceTypes.keySet());
+        List<Map<byte[], byte[]>> hashes = hashes(keys.stream().map(redisKeyValueAdapter::toBytes).toList());
+
+        Map<String, Object> resolved = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (hashes.get(i) == null || hashes.get(i).isEmpty()) {
+                continue;
+            }
+            String key = keys.get(i);
+            resolved.put(key, readReference(converter, referenceTypes.get(key), key, hashes.get(i)));
+        }
+        return resolved;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<byte[], byte[]>> hashes(List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            keys.forEach(key -> connection.hashCommands().hGetAll(key));
+            return connection.closePipeline();
+        });
+        List<Map<byte[], byte[]>> hashes = new ArrayList<>(keys.size());
+        results.forEach(result -> hashes.add((Map<byte[], byte[]>) result));
+        return hashes;
+    }
+}
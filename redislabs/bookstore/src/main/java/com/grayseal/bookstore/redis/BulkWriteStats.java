@@ -0,0 +1,56 @@
+package com.grayseal.bookstore.redis;
+
+import lombok.Getter;
+
+/**
+ * Running totals for a {@link BulkWriter} job.
+ *
+ * <p>Every entity written through the bulk writer would have cost one synchronous round trip per command
+ * when saved through a repository ({@code DEL}, {@code HMSET}, {@code SADD} plus two {@code SADD}s per
+ * secondary index). The bulk writer sends all of those commands for a batch in a single pipelined
+ * round trip, so the difference between {@link #getCommands()} and {@link #getRoundTrips()} is the number
+ * of round trips saved.</p>
+ */
+@Getter
+public class BulkWriteStats {
+
+    private long entities;
+    private long commands;
+    private long roundTrips;
+    private long elapsedNanos;
+
+    synchronized void record(long entities, long commands, long elapsedNanos) {
+        this.entities += entities;
+        this.commands += commands;
+        this.roundTrips++;
+        this.elapsedNanos += elapsedNanos;
+    }
+
+    /**
+     * Adds the totals of another job to this one.
+     *
+     * @param other the stats to merge into this instance
+     * @return this instance
+     */
+    public synchronized BulkWriteStats merge(BulkWriteStats other) {
+        this.entities += other.entities;
+        this.commands += other.commands;
+        this.roundTrips += other.roundTrips;
+        this.elapsedNanos += other.elapsedNanos;
+        return this;
+    }
+
+    public long getRoundTripsSaved() {
+        return Math.max(0, commands - roundTrips);
+    }
+
+    public double getEntitiesPerSecond() {
+        return elapsedNanos == 0 ? 0 : entities / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entities in %d ms (%.0f entities/sec), %d round trips for %d commands (%d saved)",
+                entities, elapsedNanos / 1_000_000, getEntitiesPerSecond(), roundTrips, commands, getRoundTripsSaved());
+    }
+}
@@ -0,0 +1,173 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.IndexedData;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.SimpleIndexedPropertyValue;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.core.mapping.RedisPersistentProperty;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes {@code @RedisHash} entities to Redis in pipelined batches.
+ *
+ * <p>Entities are converted with the same {@link RedisConverter} the repositories use, so the resulting
+ * hashes, keyspace id sets, {@code @Reference} links and {@code @Indexed} entries are identical to what
+ * {@code CrudRepository.save} produces. Instead of one synchronous round trip per command, all commands
+ * of a batch are flushed in one pipeline, optionally wrapped in {@code MULTI}/{@code EXEC}. Registered
+ * {@link EntityWriteHook}s add their commands to the same pipeline, called once per batch.</p>
+ *
+ * <p>The writer is meant for inserts and full overwrites. It does not remove an entity from index sets of
+ * previously indexed values, so updates that change an {@code @Indexed} property should still go through
+ * the repository.</p>
+ */
+@Component
+public class BulkWriter {
+
+    @Value("${app.bulk.batchSize:500}")
+    private Integer batchSize;
+
+    @Value("${app.bulk.transactional:false}")
+    private Boolean transactional;
+
+    @Autowired
+    private RedisKeyValueAdapter redisKeyValueAdapter;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private WriteHooks writeHooks;
+
+    /**
+     * Saves all entities, flushing a pipeline every {@code app.bulk.batchSize} entities.
+     *
+     * <p>Entities without an id get a random UUID, the same id strategy the repositories use.</p>
+     *
+     * @param entities the entities to save
+     * @return the write statistics for this call
+     */
+    public <T> BulkWriteStats saveAll(Iterable<T> entities) {
+        BulkWriteStats stats = new BulkWriteStats();
+        List<T> batch = new ArrayList<>(batchSize);
+        for (T entity : entities) {
+            batch.add(entity);
+            if (batch.size() >= batchSize) {
+                write(batch, stats);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Saves the given entities in a single pipelined round trip, regardless of the configured batch size.
+     *
+     * @param batch the entities to save
+     * @param stats the statistics to record the write in
+     */
+    public <T> void write(List<T> batch, BulkWriteStats stats) {
+        write(batch, List.of(), stats);
+    }
+
+    /**
+     * Saves the given entities in a single pipelined round trip, overwriting earlier versions of some of them.
+     * The hooks are called with the earlier versions first, as for repository updates, so data derived from
+     * values that changed is removed. The previous index entries of {@code @Indexed} properties are not.
+     *
+     * @param batch    the entities to save
+     * @param previous the stored versions of the entities being overwritten
+     * @param stats    the statistics to record the write in
+     */
+    public <T> void write(List<T> batch, Collection<?> previous, BulkWriteStats stats) {
+        long start = System.nanoTime();
+        RedisConverter converter = redisKeyValueAdapter.getConverter();
+
+        List<RedisData> converted = new ArrayList<>(batch.size());
+        long commands = 0;
+        for (T entity : batch) {
+            assignId(entity, converter);
+            RedisData rdo = new RedisData();
+            converter.write(entity, rdo);
+            converted.add(rdo);
+            commands += commandCount(rdo);
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (transactional) {
+                connection.multi();
+            }
+            converted.forEach(rdo -> write(connection, rdo));
+            writeHooks.afterWrites(connection, previous, batch);
+            if (transactional) {
+                connection.exec();
+            }
+            return null;
+        });
+        writeHooks.afterWritesStored(previous, batch);
+
+        stats.record(batch.size(), commands, System.nanoTime() - start);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    private void write(RedisConnection connection, RedisData rdo) {
+        byte[] id = redisKeyValueAdapter.toBytes(rdo.getId());
+        byte[] objectKey = redisKeyValueAdapter.createKey(rdo.getKeyspace(), rdo.getId());
+
+        connection.keyCommands().del(objectKey);
+        connection.hashCommands().hMSet(objectKey, rdo.getBucket().rawMap());
+        connection.setCommands().sAdd(redisKeyValueAdapter.toBytes(rdo.getKeyspace()), id);
+
+        if (rdo.getTimeToLive() != null && rdo.getTimeToLive() > 0) {
+            connection.keyCommands().expire(objectKey, rdo.getTimeToLive());
+        }
+
+        for (IndexedData indexedData : rdo.getIndexedData()) {
+            if (indexedData instanceof SimpleIndexedPropertyValue value && value.getValue() != null) {
+                byte[] indexKey = ByteUtils.concat(
+                        redisKeyValueAdapter.toBytes(value.getKeyspace() + ":" + value.getIndexName() + ":"),
+                        redisKeyValueAdapter.toBytes(value.getValue()));
+                connection.setCommands().sAdd(indexKey, id);
+                // keep track of the indexes used by the entity, like the repository does
+                connection.setCommands().sAdd(ByteUtils.concatAll(redisKeyValueAdapter.toBytes(value.getKeyspace() + ":"),
+                        id, redisKeyValueAdapter.toBytes(":idx")), indexKey);
+            }
+        }
+    }
+
+    private static long commandCount(RedisData rdo) {
+        long commands = 3;
+        if (rdo.getTimeToLive() != null && rdo.getTimeToLive() > 0) {
+            commands++;
+        }
+        return commands + 2L * rdo.getIndexedData().size();
+    }
+
+    private static void assignId(Object entity, RedisConverter converter) {
+        RedisPersistentEntity<?> persistentEntity = converter.getMappingContext().getRequiredPersistentEntity(entity.getClass());
+        RedisPersistentProperty idProperty = persistentEntity.getRequiredIdProperty();
+        PersistentPropertyAccessor<Object> accessor = persistentEntity.getPropertyAccessor(entity);
+        if (accessor.getProperty(idProperty) == null) {
+            accessor.setProperty(idProperty, UUID.randomUUID().toString());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.grayseal.bookstore.redis;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The short name of a property in the compact storage layout, used when {@code app.storage.compact.enabled} is
+ * set. See {@link CompactLayout}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CompactField {
+
+    /**
+     * @return the hash field name of the property, or the prefix of its fields for a collection
+     */
+    String value();
+
+    /**
+     * @return whether the property is rarely read on its own, and stored with the other packed properties of the
+     * entity in a single binary field when {@code app.storage.compact.packing} is set
+     */
+    boolean packed() default false;
+}
@@ -0,0 +1,310 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.core.mapping.RedisPersistentProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Translates the hashes of entities with {@link CompactField}s between the layout of {@code MappingRedisConverter}
+ * and a compact one, which saves memory on every entity:
+ *
+ * <ul>
+ *     <li>properties are stored under their short name, and collection elements as {@code <name>.<index>} rather
+ *     than {@code <property>.[<index>]};</li>
+ *     <li>the {@code _class} type hint and the {@code id} field, which repeats the key, are left out;</li>
+ *     <li>references are stored as the id of the referenced entity, without its keyspace;</li>
+ *     <li>with packing, the packed properties are stored together in one binary field, {@value #PACKED_FIELD},
+ *     deflated when that makes it shorter.</li>
+ * </ul>
+ *
+ * <p>Short fields keep the hashes in Redis' listpack encoding for longer: a hash is converted to a hash table,
+ * several times larger, once it has more than {@code hash-max-listpack-entries} fields or a value longer than
+ * {@code hash-max-listpack-value} bytes. Expanding a hash that is already in the default layout leaves it as it
+ * is, so both layouts can be read while the entities are being rewritten.</p>
+ */
+public class CompactLayout {
+
+    public static final String PACKED_FIELD = "_p";
+    private static final String TYPE_FIELD = "_class";
+    private static final Pattern ELEMENT = Pattern.compile("\\.\\[(\\d+)]");
+    private static final Pattern COMPACT_ELEMENT = Pattern.compile("\\.(\\d+)");
+
+    private final RedisMappingContext mappingContext;
+    private final boolean packing;
+    private final Map<Class<?>, Optional<Layout>> layouts = new ConcurrentHashMap<>();
+
+    /**
+     * @param names       property name to short name
+     * @param properties  short name to property name
+     * @param packed      the names of the packed properties
+     * @param references  the keyspaces of the referenced entities, by property name
+     */
+    private record Layout(Map<String, String> names, Map<String, String> properties, List<String> packed,
+                          Map<String, String> references, String idProperty) {
+    }
+
+    public CompactLayout(RedisMappingContext mappingContext, boolean packing) {
+        this.mappingContext = mappingContext;
+        this.packing = packing;
+    }
+
+    /**
+     * @return whether entities of a type have a compact layout, that is at least one {@link CompactField}
+     */
+    public boolean isCompact(Class<?> type) {
+        return layout(type).isPresent();
+    }
+
+    /**
+     * @return the hash field of a property in the compact layout: its short name, if it has one
+     */
+    public String field(Class<?> type, String property) {
+        return layout(type).map(layout -> layout.names().get(property)).orElse(property);
+    }
+
+    /**
+     * Converts a hash written by {@code MappingRedisConverter} to the compact layout, in place.
+     */
+    public void compact(Class<?> type, RedisData data) {
+        Optional<Layout> found = layout(type);
+        if (found.isEmpty()) {
+            return;
+        }
+        Layout layout = found.get();
+        Bucket bucket = data.getBucket();
+        Map<String, byte[]> fields = new LinkedHashMap<>(bucket.asMap());
+        fields.keySet().forEach(bucket::remove);
+
+        Map<String, byte[]> packed = new LinkedHashMap<>();
+        fields.forEach((field, value) -> {
+            String property = property(field);
+            if (field.equals(TYPE_FIELD) || field.equals(layout.idProperty())) {
+                return;
+            }
+            String keyspace = layout.references().get(property);
+            if (keyspace != null && startsWith(value, keyspace + ":")) {
+                value = substring(value, keyspace.length() + 1);
+            }
+            String name = layout.names().getOrDefault(property, property) + compactRest(field.substring(property.length()));
+            if (packing && layout.packed().contains(property)) {
+                packed.put(name, value);
+            } else {
+                bucket.put(name, value);
+            }
+        });
+        if (!packed.isEmpty()) {
+            bucket.put(PACKED_FIELD, pack(packed));
+        }
+    }
+
+    /**
+     * Converts a hash in the compact layout back to the layout of {@code MappingRedisConverter}, in place, so the
+     * converter can read it. Fields already in that layout are kept as they are.
+     */
+    public void expand(Class<?> type, RedisData data) {
+        Optional<Layout> found = layout(type);
+        if (found.isEmpty()) {
+            return;
+        }
+        Layout layout = found.get();
+        Bucket bucket = data.getBucket();
+        Map<String, byte[]> fields = new LinkedHashMap<>(bucket.asMap());
+        byte[] packed = fields.remove(PACKED_FIELD);
+        if (packed != null) {
+            fields.putAll(unpack(packed));
+        }
+        new ArrayList<>(bucket.keySet()).forEach(bucket::remove);
+
+        fields.forEach((field, value) -> {
+            String head = property(field);
+            String property = layout.properties().get(head);
+            String name = property == null ? field : property + expandRest(field.substring(head.length()));
+            String keyspace = layout.references().get(property == null ? head : property);
+            if (keyspace != null && !startsWith(value, keyspace + ":")) {
+                value = concat(keyspace + ":", value);
+            }
+            bucket.put(name, value);
+        });
+        if (data.getId() != null && !bucket.hasValue(layout.idProperty())) {
+            bucket.put(layout.idProperty(), data.getId().getBytes(Bucket.CHARSET));
+        }
+    }
+
+    private Optional<Layout> layout(Class<?> type) {
+        return layouts.computeIfAbsent(type, key -> {
+            RedisPersistentEntity<?> entity = mappingContext.getPersistentEntity(key);
+            if (entity == null || entity.getPersistentProperty(CompactField.class) == null) {
+                return Optional.empty();
+            }
+            Map<String, String> names = new HashMap<>();
+            Map<String, String> properties = new HashMap<>();
+            List<String> packed = new ArrayList<>();
+            Map<String, String> references = new HashMap<>();
+            for (RedisPersistentProperty property : entity) {
+                CompactField field = property.findAnnotation(CompactField.class);
+                if (field != null) {
+                    if (entity.getPersistentProperty(field.value()) != null || properties.containsKey(field.value())
+                            || field.value().contains(".") || field.value().equals(PACKED_FIELD)) {
+                        throw new IllegalStateException("Compact name " + field.value() + " of " + key.getSimpleName()
+                                + "." + property.getName() + " is not unique");
+                    }
+                    names.put(property.getName(), field.value());
+                    properties.put(field.value(), property.getName());
+                    if (field.packed()) {
+                        packed.add(property.getName());
+                    }
+                }
+                if (property.isAssociation()) {
+                    references.put(property.getName(), mappingContext.getRequiredPersistentEntity(property.getActualType()).getKeySpace());
+                }
+            }
+            return Optional.of(new Layout(names, properties, packed, references, entity.getRequiredIdProperty().getName()));
+        });
+    }
+
+    /**
+     * @return the property a field belongs to, the part of its name before the first {@code .}
+     */
+    private static String property(String field) {
+        int separator = field.indexOf('.');
+        return separator < 0 ? field : field.substring(0, separator);
+    }
+
+    private static String compactRest(String rest) {
+        Matcher matcher = ELEMENT.matcher(rest);
+        return matcher.matches() ? "." + matcher.group(1) : rest;
+    }
+
+    private static String expandRest(String rest) {
+        Matcher matcher = COMPACT_ELEMENT.matcher(rest);
+        return matcher.matches() ? ".[" + matcher.group(1) + "]" : rest;
+    }
+
+    /**
+     * Serializes fields as a sequence of varint-prefixed names and values, deflated if that is shorter. The first
+     * byte tells which: 0 for raw, 1 for deflated.
+     */
+    static byte[] pack(Map<String, byte[]> fields) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        fields.forEach((name, value) -> {
+            byte[] bytes = name.getBytes(Bucket.CHARSET);
+            writeVarint(raw, bytes.length);
+            raw.writeBytes(bytes);
+            writeVarint(raw, value.length);
+            raw.writeBytes(value);
+        });
+        byte[] input = raw.toByteArray();
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] buffer = new byte[input.length];
+        int deflated = deflater.deflate(buffer);
+        boolean shorter = deflater.finished() && deflated < input.length;
+        deflater.end();
+
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        packed.write(shorter ? 1 : 0);
+        packed.write(shorter ? buffer : input, 0, shorter ? deflated : input.length);
+        return packed.toByteArray();
+    }
+
+    static Map<String, byte[]> unpack(byte[] packed) {
+        byte[] input = new byte[packed.length - 1];
+        System.arraycopy(packed, 1, input, 0, input.length);
+        if (packed[0] == 1) {
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(input);
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream(input.length * 3);
+            byte[] buffer = new byte[256];
+            try {
+                while (!inflater.finished()) {
+                    int length = inflater.inflate(buffer);
+                    if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated.write(buffer, 0, length);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt packed fields", e);
+            } finally {
+                inflater.end();
+            }
+            input = inflated.toByteArray();
+        }
+
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        int[] position = {0};
+        while (position[0] < input.length) {
+            String name = new String(read(input, position), Bucket.CHARSET);
+            fields.put(name, read(input, position));
+        }
+        return fields;
+    }
+
+    private static byte[] read(byte[] input, int[] position) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = input[position[0]++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        byte[] value = new byte[length];
+        System.arraycopy(input, position[0], value, 0, length);
+        position[0] += length;
+        return value;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static boolean startsWith(byte[] value, String prefix) {
+        byte[] bytes = prefix.getBytes(Bucket.CHARSET);
+        if (value.length < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (value[i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] substring(byte[] value, int start) {
+        byte[] result = new byte[value.length - start];
+        System.arraycopy(value, start, result, 0, result.length);
+        return result;
+    }
+
+    private static byte[] concat(String prefix, byte[] value) {
+        byte[] bytes = prefix.getBytes(Bucket.CHARSET);
+        byte[] result = new byte[bytes.length + value.length];
+        System.arraycopy(bytes, 0, result, 0, bytes.length);
+        System.arraycopy(value, 0, result, bytes.length, value.length);
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.data.redis.core.PartialUpdate;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.ReferenceResolver;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+
+/**
+ * A {@link MappingRedisConverter} storing the entities with {@link CompactField}s in the {@link CompactLayout}.
+ *
+ * <p>Entities are written in the compact layout only when {@code compactWrites} is set, but hashes are read in
+ * either layout, so the layout can be switched both ways: entities are converted as they are saved again.
+ * Partial updates are written in the default layout.</p>
+ */
+public class CompactRedisConverter extends MappingRedisConverter {
+
+    private final CompactLayout layout;
+    private final boolean compactWrites;
+
+    public CompactRedisConverter(RedisMappingContext mappingContext, ReferenceResolver referenceResolver,
+                                 CompactLayout layout, boolean compactWrites) {
+        super(mappingContext, null, referenceResolver);
+        this.layout = layout;
+        this.compactWrites = compactWrites;
+    }
+
+    @Override
+    public void write(Object source, RedisData sink) {
+        super.write(source, sink);
+        if (compactWrites && source != null && !(source instanceof PartialUpdate)) {
+            layout.compact(source.getClass(), sink);
+        }
+    }
+
+    @Override
+    public <R> R read(Class<R> type, RedisData source) {
+        layout.expand(type, source);
+        return super.read(type, source);
+    }
+
+    /**
+     * Converts a hash read without the converter to the default layout, as {@link #read(Class, RedisData)} does, so
+     * its fields can be inspected before it is read.
+     */
+    public void expand(Class<?> type, RedisData source) {
+        layout.expand(type, source);
+    }
+
+    public CompactLayout getLayout() {
+        return layout;
+    }
+
+    public boolean isCompactWrites() {
+        return compactWrites;
+    }
+}
@@ -0,0 +1,112 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.core.mapping.RedisPersistentProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Loads {@code @RedisHash} entities by id with one concurrent lookup per hash, in a {@link FanOut}.
+ *
+ * <p>Like the {@link BatchReader}, it reads the entity hashes first, then the distinct references of all of
+ * them, and converts the entities without further lookups. Instead of a pipeline on a dedicated connection,
+ * every hash is read by its own virtual thread on the shared connection, at most {@code app.fanout.parallelism}
+ * at a time, so the two steps each take about one round trip. Both steps together must complete within
+ * {@code app.fanout.timeout}; otherwise the lookups still running are cancelled and a
+ * {@link org.springframework.dao.QueryTimeoutException} is thrown.</p>
+ */
+@Component
+public class ConcurrentReader {
+
+    @Autowired
+    private RedisKeyValueAdapter redisKeyValueAdapter;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.fanout.parallelism:16}")
+    private Integer parallelism;
+
+    @Value("${app.fanout.timeout:PT2S}")
+    private Duration timeout;
+
+    /**
+     * Finds entities by id, resolving their references.
+     *
+     * @param type the entity type
+     * @param ids  the ids to look up; duplicates are loaded once
+     * @return the entities that exist, in the order of the given ids
+     */
+    public <T> List<T> findAllById(Class<T> type, Collection<String> ids) {
+        RedisConverter converter = redisKeyValueAdapter.getConverter();
+        RedisPersistentEntity<?> entity = converter.getMappingContext().getRequiredPersistentEntity(type);
+        List<RedisPersistentProperty> references = BatchReader.references(entity);
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        try (FanOut scope = new FanOut(parallelism, timeout)) {
+            List<Future<Map<byte[], byte[]>>> hashes = distinctIds.stream()
+                    .map(id -> scope.fork(() -> hash(redisKeyValueAdapter.createKey(entity.getKeySpace(), id))))
+                    .toList();
+            scope.join();
+
+            List<RedisData> found = new ArrayList<>();
+            List<Map<RedisPersistentProperty, List<String>>> referenceKeys = new ArrayList<>();
+            Map<String, Class<?>> referenceTypes = new LinkedHashMap<>();
+            for (int i = 0; i < distinctIds.size(); i++) {
+                Map<byte[], byte[]> hash = hashes.get(i).resultNow();
+                if (hash == null || hash.isEmpty()) {
+                    continue;
+                }
+                RedisData rdo = new RedisData(hash);
+                rdo.setId(distinctIds.get(i));
+                rdo.setKeyspace(entity.getKeySpace());
+                BatchReader.expand(converter, type, rdo);
+
+                Map<RedisPersistentProperty, List<String>> keys = BatchReader.extractReferences(rdo.getBucket(), references);
+                keys.forEach((property, values) -> values.forEach(key -> referenceTypes.put(key, property.getActualType())));
+                found.add(rdo);
+                referenceKeys.add(keys);
+            }
+
+            Map<String, Future<Map<byte[], byte[]>>> referenceHashes = new LinkedHashMap<>();
+            referenceTypes.keySet().forEach(key -> referenceHashes.put(key, scope.fork(() -> hash(redisKeyValueAdapter.toBytes(key)))));
+            scope.join();
+
+            Map<String, Object> resolved = new HashMap<>();
+            referenceHashes.forEach((key, hash) -> {
+                if (hash.resultNow() != null && !hash.resultNow().isEmpty()) {
+                    resolved.put(key, BatchReader.readReference(converter, referenceTypes.get(key), key, hash.resultNow()));
+                }
+            });
+
+            List<T> result = new ArrayList<>(found.size());
+            for (int i = 0; i < found.size(); i++) {
+                result.add(BatchReader.setReferences(entity, converter.read(type, found.get(i)), referenceKeys.get(i), resolved));
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading " + type.getSimpleName() + "s", e);
+        }
+    }
+
+    private Map<byte[], byte[]> hash(byte[] key) {
+        return redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(key));
+    }
+}
@@ -0,0 +1,63 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.util.List;
+
+/**
+ * Maintains data derived from an entity type, such as sorted-set indexes or aggregates, whenever an entity
+ * of that type is written.
+ *
+ * <p>Hooks are invoked by {@link WriteHooks} for repository writes and by {@link BulkWriter} for bulk writes.
+ * They receive the connection of the write, which is usually pipelined, so they must only issue commands and
+ * never read their results.</p>
+ *
+ * @param <T> the entity type the hook applies to
+ */
+public interface EntityWriteHook<T> {
+
+    Class<T> getType();
+
+    /**
+     * Called after an entity was inserted or updated.
+     *
+     * @param connection the connection to issue commands on
+     * @param entity     the saved entity
+     */
+    void afterSave(RedisConnection connection, T entity);
+
+    /**
+     * Called after an entity was deleted, and before an update with the previous state of the entity, so
+     * derived data for old values can be removed.
+     *
+     * @param connection the connection to issue commands on
+     * @param entity     the deleted or previous entity
+     */
+    void afterDelete(RedisConnection connection, T entity);
+
+    /**
+     * Called once for a batch of entities written in the same pipeline. By default calls
+     * {@link #afterDelete(RedisConnection, Object)} for every previous entity, then
+     * {@link #afterSave(RedisConnection, Object)} for every saved one. Hooks whose commands do not depend on each
+     * entity, such as invalidations or announcements, can override it to issue them once per batch.
+     *
+     * @param connection the connection to issue commands on
+     * @param previous   the previous entities of those overwritten, possibly empty
+     * @param saved      the saved entities, possibly empty
+     */
+    default void afterWrites(RedisConnection connection, List<T> previous, List<T> saved) {
+        previous.forEach(entity -> afterDelete(connection, entity));
+        saved.forEach(entity -> afterSave(connection, entity));
+    }
+
+    /**
+     * Called once the pipeline of {@link #afterWrites(RedisConnection, List, List)} was executed, with the same
+     * entities, so state kept in memory only follows writes that reached Redis. Not called when the pipeline
+     * failed. Does nothing by default.
+     *
+     * @param previous the previous entities of those overwritten, possibly empty
+     * @param saved    the saved entities, possibly empty
+     */
+    default void afterWritesStored(List<T> previous, List<T> saved) {
+    }
+}
@@ -0,0 +1,109 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A scope running subtasks concurrently on virtual threads, at most {@code parallelism} at a time, and within
+ * a deadline.
+ *
+ * <p>It follows the rules of structured concurrency ({@code StructuredTaskScope.ShutdownOnFailure}, still a
+ * preview API in Java 21): subtasks are forked and joined by the thread owning the scope, the first failure
+ * or the deadline cancels the subtasks still running, and no subtask outlives the scope, which is meant to be
+ * used in a try-with-resources block:</p>
+ *
+ * <pre>{@code
+ * try (FanOut scope = new FanOut(16, Duration.ofSeconds(2))) {
+ *     List<Future<Book>> books = ids.stream().map(id -> scope.fork(() -> load(id))).toList();
+ *     scope.join();
+ *     ...
+ * }
+ * }</pre>
+ */
+public class FanOut implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final long deadline;
+    private final List<Future<?>> subtasks = new ArrayList<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    /**
+     * @param parallelism the maximum number of subtasks running at the same time
+     * @param timeout     the time, from now, by which every subtask must be complete
+     */
+    public FanOut(int parallelism, Duration timeout) {
+        this.permits = new Semaphore(parallelism);
+        this.deadline = System.nanoTime() + timeout.toNanos();
+    }
+
+    /**
+     * Starts a subtask. It runs as soon as a permit is available.
+     *
+     * @return the future of its result, complete once {@link #join()} returned, when {@code resultNow()} can read it
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        Future<T> future = executor.submit(() -> {
+            permits.acquire();
+            try {
+                return task.call();
+            } catch (Exception e) {
+                // cancels the siblings, which then fail with an interruption
+                failure.compareAndSet(null, e);
+                executor.shutdownNow();
+                throw e;
+            } finally {
+                permits.release();
+            }
+        });
+        subtasks.add(future);
+        return future;
+    }
+
+    /**
+     * Waits for every subtask forked so far.
+     *
+     * @throws QueryTimeoutException if the deadline passed first
+     * @throws RuntimeException      the failure of the first subtask that failed; checked exceptions are wrapped
+     *                               in an {@link IllegalStateException}
+     */
+    public void join() throws InterruptedException {
+        try {
+            for (Future<?> subtask : subtasks) {
+                subtask.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            executor.shutdownNow();
+            throw new QueryTimeoutException("Fan-out of " + subtasks.size() + " subtasks did not complete in time");
+        } catch (ExecutionException | CancellationException e) {
+            executor.shutdownNow();
+            Exception first = failure.get() != null ? failure.get() : e;
+            throw first instanceof RuntimeException cause ? cause : new IllegalStateException(first);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels the subtasks still running and waits for their threads to end.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        executor.close();
+    }
+}
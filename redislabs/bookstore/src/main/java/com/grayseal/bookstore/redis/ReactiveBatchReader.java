@@ -0,0 +1,151 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisPersistentEntity;
+import org.springframework.data.redis.core.mapping.RedisPersistentProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The non-blocking counterpart of {@link BatchReader}, on the reactive Lettuce connection.
+ *
+ * <p>Entities are loaded the same way: their hashes first, then the distinct references of the batch, then
+ * conversion with the repositories' {@link RedisConverter}, which never goes back to Redis since the
+ * references are removed from the hashes beforehand. The {@code HGETALL}s of a batch are issued without
+ * waiting for each other, so Lettuce pipelines them on the shared connection, and no thread waits for a
+ * reply.</p>
+ */
+@Component
+public class ReactiveBatchReader {
+
+    @Autowired
+    private RedisKeyValueAdapter redisKeyValueAdapter;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+    @Value("${app.reactive.concurrency:64}")
+    private Integer concurrency;
+
+    /**
+     * Finds an entity by id, resolving its references.
+     *
+     * @return the entity, or an empty {@code Mono} if it does not exist
+     */
+    public <T> Mono<T> findById(Class<T> type, String id) {
+        return findAllById(type, List.of(id), new HashMap<>()).next();
+    }
+
+    /**
+     * Finds entities by id, resolving their references in bulk.
+     *
+     * @param type               the entity type
+     * @param ids                the ids to look up; duplicates are loaded once
+     * @param resolvedReferences the referenced entities already resolved, by {@code keyspace:id}; references
+     *                           fetched by this call are added to it. When {@code null} references are not resolved
+     * @return the entities that exist, in the order of the given ids
+     */
+    public <T> Flux<T> findAllById(Class<T> type, Collection<String> ids, Map<String, Object> resolvedReferences) {
+        RedisConverter converter = redisKeyValueAdapter.getConverter();
+        RedisPersistentEntity<?> entity = converter.getMappingContext().getRequiredPersistentEntity(type);
+        List<RedisPersistentProperty> references = BatchReader.references(entity);
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        return Flux.fromIterable(distinctIds)
+                .flatMapSequential(id -> hash(redisKeyValueAdapter.createKey(entity.getKeySpace(), id))
+                        .map(hash -> {
+                            RedisData rdo = new RedisData(hash);
+                            rdo.setId(id);
+                            rdo.setKeyspace(entity.getKeySpace());
+                            BatchReader.expand(converter, type, rdo);
+                            return rdo;
+                        }), concurrency)
+                .collectList()
+                .flatMapMany(found -> {
+                    if (resolvedReferences == null) {
+                        return Flux.fromIterable(found).map(rdo -> converter.read(type, rdo));
+                    }
+                    List<Map<RedisPersistentProperty, List<String>>> referenceKeys = new ArrayList<>(found.size());
+                    Map<String, Class<?>> referenceTypes = new LinkedHashMap<>();
+                    for (RedisData rdo : found) {
+                        Map<RedisPersistentProperty, List<String>> keys = BatchReader.extractReferences(rdo.getBucket(), references);
+                        keys.forEach((property, values) -> values.forEach(key -> referenceTypes.put(key, property.getActualType())));
+                        referenceKeys.add(keys);
+                    }
+                    referenceTypes.keySet().removeAll(resolvedReferences.keySet());
+
+                    return resolve(referenceTypes, converter)
+                            .doOnNext(resolvedReferences::putAll)
+                            .thenMany(Flux.range(0, found.size()))
+                            .map(i -> BatchReader.setReferences(entity, converter.read(type, found.get(i)),
+                                    referenceKeys.get(i), resolvedReferences));
+                });
+    }
+
+    /**
+     * Streams every entity of a type, reading the id set of its keyspace with {@code SSCAN} and loading the
+     * entities chunk by chunk. Ids are scanned, and chunks loaded, only as fast as the subscriber requests
+     * entities; references are resolved once for the whole stream.
+     *
+     * @param type      the entity type
+     * @param chunkSize the number of entities loaded per batch
+     * @return the entities, in no particular order
+     */
+    public <T> Flux<T> findAll(Class<T> type, int chunkSize) {
+        RedisPersistentEntity<?> entity = redisKeyValueAdapter.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        Map<String, Object> resolvedReferences = new ConcurrentHashMap<>();
+        return reactiveRedisTemplate.opsForSet().scan(entity.getKeySpace(), ScanOptions.scanOptions().count(chunkSize).build())
+                .buffer(chunkSize)
+                .concatMap(ids -> findAllById(type, ids, resolvedReferences), 1);
+    }
+
+    /**
+     * Finds the ids of the entities whose {@code @Indexed} property has a value.
+     */
+    public Flux<String> findIdsBy(Class<?> type, String property, String value) {
+        RedisPersistentEntity<?> entity = redisKeyValueAdapter.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        return reactiveRedisTemplate.opsForSet().members(entity.getKeySpace() + ":" + property + ":" + value);
+    }
+
+    private Mono<Map<String, Object>> resolve(Map<String, Class<?>> referenceTypes, RedisConverter converter) {
+        return Flux.fromIterable(referenceTypes.entrySet())
+                .flatMap(reference -> hash(redisKeyValueAdapter.toBytes(reference.getKey()))
+                        .map(hash -> Map.entry(reference.getKey(),
+                                BatchReader.readReference(converter, reference.getValue(), reference.getKey(), hash))), concurrency)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * @return the fields of a hash, or an empty {@code Mono} if it does not exist
+     */
+    private Mono<Map<byte[], byte[]>> hash(byte[] key) {
+        return reactiveRedisTemplate.execute((ReactiveRedisConnection connection) -> connection.hashCommands().hGetAll(ByteBuffer.wrap(key))
+                        .collectMap(entry -> bytes(entry.getKey()), entry -> bytes(entry.getValue())))
+                .next()
+                .filter(hash -> !hash.isEmpty());
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
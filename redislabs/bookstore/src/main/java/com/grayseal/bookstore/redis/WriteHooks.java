@@ -0,0 +1,135 @@
+package com.grayseal.bookstore.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.keyvalue.core.event.KeyValueEvent;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches entity writes to the registered {@link EntityWriteHook}s.
+ *
+ * <p>Repository writes are picked up from the {@link KeyValueEvent}s published by the key-value template. On
+ * update the previous state of the entity is loaded first, so hooks can remove derived data for values that
+ * changed. Bulk writes call {@link #afterWrites(RedisConnection, Collection, Collection)} once inside their
+ * pipeline.</p>
+ */
+@Component
+public class WriteHooks {
+
+    @Autowired(required = false)
+    private List<EntityWriteHook<?>> hooks = List.of();
+
+    @Autowired
+    private RedisKeyValueAdapter redisKeyValueAdapter;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @SuppressWarnings("unchecked")
+    public void afterSave(RedisConnection connection, Object entity) {
+        for (EntityWriteHook<?> hook : hooks) {
+            if (hook.getType().isInstance(entity)) {
+                ((EntityWriteHook<Object>) hook).afterSave(connection, entity);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void afterDelete(RedisConnection connection, Object entity) {
+        for (EntityWriteHook<?> hook : hooks) {
+            if (hook.getType().isInstance(entity)) {
+                ((EntityWriteHook<Object>) hook).afterDelete(connection, entity);
+            }
+        }
+    }
+
+    /**
+     * Calls every hook once for a batch written in one pipeline, with the entities of its type.
+     *
+     * @param connection the connection of the pipeline
+     * @param previous   the previous entities of those overwritten
+     * @param saved      the saved entities
+     */
+    @SuppressWarnings("unchecked")
+    public void afterWrites(RedisConnection connection, Collection<?> previous, Collection<?> saved) {
+        for (EntityWriteHook<?> hook : hooks) {
+            List<Object> previousOfType = ofType(previous, hook);
+            List<Object> savedOfType = ofType(saved, hook);
+            if (!previousOfType.isEmpty() || !savedOfType.isEmpty()) {
+                ((EntityWriteHook<Object>) hook).afterWrites(connection, previousOfType, savedOfType);
+            }
+        }
+    }
+
+    /**
+     * Tells every hook that a batch passed to {@link #afterWrites(RedisConnection, Collection, Collection)} was
+     * written, once its pipeline was executed.
+     *
+     * @param previous the previous entities of those overwritten
+     * @param saved    the saved entities
+     */
+    @SuppressWarnings("unchecked")
+    public void afterWritesStored(Collection<?> previous, Collection<?> saved) {
+        for (EntityWriteHook<?> hook : hooks) {
+            List<Object> previousOfType = ofType(previous, hook);
+            List<Object> savedOfType = ofType(saved, hook);
+            if (!previousOfType.isEmpty() || !savedOfType.isEmpty()) {
+                ((EntityWriteHook<Object>) hook).afterWritesStored(previousOfType, savedOfType);
+            }
+        }
+    }
+
+    public boolean handles(Class<?> type) {
+        return hooks.stream().anyMatch(hook -> hook.getType().isAssignableFrom(type));
+    }
+
+    @EventListener
+    public void onBeforeUpdate(KeyValueEvent.BeforeUpdateEvent<?> event) {
+        if (handles(event.getType())) {
+            Object previous = redisKeyValueAdapter.get(event.getKey(), event.getKeyspace(), event.getType());
+            if (previous != null) {
+                pipelined(connection -> afterDelete(connection, previous));
+            }
+        }
+    }
+
+    @EventListener
+    public void onAfterInsert(KeyValueEvent.AfterInsertEvent<?> event) {
+        if (handles(event.getType())) {
+            pipelined(connection -> afterSave(connection, event.getPayload()));
+        }
+    }
+
+    @EventListener
+    public void onAfterUpdate(KeyValueEvent.AfterUpdateEvent<?> event) {
+        if (handles(event.getType())) {
+            pipelined(connection -> afterSave(connection, event.after()));
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(KeyValueEvent.AfterDeleteEvent<?> event) {
+        if (event.getPayload() != null && handles(event.getType())) {
+            pipelined(connection -> afterDelete(connection, event.getPayload()));
+        }
+    }
+
+    private static List<Object> ofType(Collection<?> entities, EntityWriteHook<?> hook) {
+        return entities.stream().filter(hook.getType()::isInstance).map(Object.class::cast).toList();
+    }
+
+    private void pipelined(Consumer<RedisConnection> commands) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            commands.accept(connection);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,47 @@
+package com.grayseal.bookstore.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Authenticates requests carrying an {@code Authorization: Bearer <token>} header against the {@link TokenSessions},
+ * and exposes their session as the {@value #SESSION_ATTRIBUTE} request attribute.
+ *
+ * <p>A request with an unknown or expired token is answered with 401 Unauthorized. Requests without the header
+ * go through unauthenticated, as every endpoint did before; endpoints that need a user read the attribute.</p>
+ */
+@Component
+public class BearerTokenFilter extends OncePerRequestFilter {
+
+    public static final String SESSION_ATTRIBUTE = "bookstore.session";
+    private static final String BEARER = "Bearer ";
+
+    @Autowired
+    private TokenSessions tokenSessions;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        TokenSessions.Session session = tokenSessions.authenticate(authorization.substring(BEARER.length()).trim());
+        if (session == null) {
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid or expired token");
+            return;
+        }
+        request.setAttribute(SESSION_ATTRIBUTE, session);
+        chain.doFilter(request, response);
+    }
+}
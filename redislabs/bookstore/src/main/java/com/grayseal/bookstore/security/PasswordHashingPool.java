@@ -0,0 +1,76 @@
+package com.grayseal.bookstore.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded worker pool for BCrypt hashing and verification.
+ *
+ * <p>BCrypt is deliberately CPU bound, so the pool is sized to the available cores by default
+ * ({@code app.bcrypt.threads}) rather than to the number of requests or records waiting for it.</p>
+ */
+@Component
+@Slf4j
+public class PasswordHashingPool {
+
+    @Value("${app.bcrypt.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private Integer threads;
+
+    @Autowired
+    private BCryptPasswordEncoder passwordEncoder;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "bcrypt-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+        log.info(">>>> Password hashing pool started with " + threads + " threads");
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hashes a raw password on the pool.
+     *
+     * @param rawPassword the password to hash
+     * @return a future completed with the BCrypt hash
+     */
+    public CompletableFuture<String> encode(CharSequence rawPassword) {
+        return CompletableFuture.supplyAsync(() -> passwordEncoder.encode(rawPassword), executor);
+    }
+
+    /**
+     * Verifies a raw password against a BCrypt hash on the pool.
+     *
+     * @param rawPassword     the password to verify
+     * @param encodedPassword the stored hash
+     * @return a future completed with {@code true} if the password matches
+     */
+    public CompletableFuture<Boolean> matches(CharSequence rawPassword, String encodedPassword) {
+        return CompletableFuture.supplyAsync(() -> passwordEncoder.matches(rawPassword, encodedPassword), executor);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+}
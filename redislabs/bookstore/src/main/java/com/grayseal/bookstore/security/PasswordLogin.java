@@ -0,0 +1,71 @@
+package com.grayseal.bookstore.security;
+
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.repositories.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Verifies an email and password once, on the {@link PasswordHashingPool}, and starts a {@link TokenSessions}
+ * session for the user.
+ *
+ * <p>At most {@code app.auth.maxPendingLogins} logins wait for the pool at a time; further ones are rejected at
+ * once rather than queued behind seconds of BCrypt work. An unknown email is checked against a dummy hash, so it
+ * takes as long as a wrong password and does not tell which emails are registered.</p>
+ */
+@Component
+@Slf4j
+public class PasswordLogin {
+
+    @Value("${app.auth.maxPendingLogins:64}")
+    private Integer maxPendingLogins;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordHashingPool hashingPool;
+
+    @Autowired
+    private TokenSessions tokenSessions;
+
+    private Semaphore pending;
+    private CompletableFuture<String> dummyHash;
+
+    @PostConstruct
+    void start() {
+        pending = new Semaphore(maxPendingLogins);
+        dummyHash = hashingPool.encode(UUID.randomUUID().toString());
+    }
+
+    /**
+     * Checks a password and issues a session token if it matches.
+     *
+     * @return a future completed with the token, or empty if the email or the password is wrong
+     * @throws RejectedExecutionException if too many logins are already waiting for the hashing pool
+     */
+    public CompletableFuture<Optional<String>> login(String email, String password) {
+        if (!pending.tryAcquire()) {
+            throw new RejectedExecutionException("Too many logins in progress");
+        }
+        try {
+            User user = userRepository.findFirstByEmail(email);
+            CompletableFuture<String> hash = user == null ? dummyHash : CompletableFuture.completedFuture(user.getPassword());
+            return hash.thenCompose(encoded -> hashingPool.matches(password, encoded))
+                    .thenApply(matches -> matches && user != null ? Optional.of(tokenSessions.issue(user)) : Optional.<String>empty())
+                    .whenComplete((token, error) -> pending.release());
+        } catch (RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+    }
+}
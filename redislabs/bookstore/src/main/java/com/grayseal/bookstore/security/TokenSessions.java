@@ -0,0 +1,181 @@
+package com.grayseal.bookstore.security;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grayseal.bookstore.cache.LocalCache;
+import com.grayseal.bookstore.models.Role;
+import com.grayseal.bookstore.models.User;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Issues opaque session tokens and resolves them to the session of their user, so a request is authenticated
+ * without running BCrypt again.
+ *
+ * <p>A token is 32 random bytes. Redis only holds its SHA-256 digest, under {@code bookstore:session:<digest>},
+ * so the stored keys cannot be replayed as tokens. A session expires after {@code app.auth.session.ttl} without
+ * use: every lookup in Redis resets its TTL with {@code GETEX}.</p>
+ *
+ * <p>Resolved sessions are kept in a {@link LocalCache} for {@code app.auth.cache.ttl}, so most requests do not
+ * reach Redis at all. The sliding TTL is therefore refreshed at most once per cache TTL, which is negligible
+ * next to the session TTL. A revoked token is deleted from Redis and announced on {@code app.auth.channel},
+ * so every instance drops it from its cache at once rather than after the cache TTL.</p>
+ */
+@Component
+@Slf4j
+public class TokenSessions implements MessageListener {
+
+    private static final String KEY_PREFIX = "bookstore:session:";
+    private static final int TOKEN_BYTES = 32;
+
+    @Value("${app.auth.session.ttl:PT30M}")
+    private Duration sessionTtl;
+
+    @Value("${app.auth.cache.ttl:PT5S}")
+    private Duration cacheTtl;
+
+    @Value("${app.auth.cache.maxSize:10000}")
+    private Integer cacheMaxSize;
+
+    @Value("${app.auth.channel:bookstore:auth:revocations}")
+    private String channel;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder redisLookups = new LongAdder();
+    private LocalCache cache;
+
+    /**
+     * The user a token was issued to, as it was at login.
+     */
+    public record Session(String userId, String email, Set<String> roles) {
+    }
+
+    /**
+     * How many sessions are cached, and how many lookups the cache answered.
+     */
+    public record Stats(Duration sessionTtl, Duration cacheTtl, int cachedSessions, long cacheHits, long redisLookups) {
+    }
+
+    @PostConstruct
+    void start() {
+        cache = new LocalCache(cacheMaxSize, cacheTtl.toNanos());
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * Starts a session for a user whose password was verified.
+     *
+     * @return the token of the session
+     */
+    public String issue(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Set<String> roles = new TreeSet<>();
+        user.getRoles().stream().map(Role::getName).forEach(roles::add);
+        Session session = new Session(user.getId(), user.getEmail(), roles);
+        String digest = digest(token);
+        redisTemplate.opsForValue().set(KEY_PREFIX + digest, write(session), sessionTtl);
+        cache.put(digest, session);
+        return token;
+    }
+
+    /**
+     * Resolves a token, from the in-process cache when possible, extending its session on a lookup in Redis.
+     *
+     * @return the session, or {@code null} if the token is unknown, expired or revoked
+     */
+    public Session authenticate(String token) {
+        String digest = digest(token);
+        Session session = (Session) cache.get(digest);
+        if (session != null) {
+            cacheHits.increment();
+            return session;
+        }
+        redisLookups.increment();
+        String value = redisTemplate.opsForValue().getAndExpire(KEY_PREFIX + digest, sessionTtl);
+        if (value == null) {
+            return null;
+        }
+        session = read(value);
+        cache.put(digest, session);
+        return session;
+    }
+
+    /**
+     * Ends the session of a token on every instance.
+     */
+    public void revoke(String token) {
+        String digest = digest(token);
+        redisTemplate.delete(KEY_PREFIX + digest);
+        cache.evict(digest);
+        redisTemplate.convertAndSend(channel, digest);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        cache.evict(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    public Duration getSessionTtl() {
+        return sessionTtl;
+    }
+
+    public Stats stats() {
+        return new Stats(sessionTtl, cacheTtl, cache.size(), cacheHits.sum(), redisLookups.sum());
+    }
+
+    private String write(Session session) {
+        try {
+            return objectMapper.writeValueAsString(session);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize session of " + session.userId(), e);
+        }
+    }
+
+    private Session read(String value) {
+        try {
+            return objectMapper.readValue(value, Session.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt session: " + e.getMessage(), e);
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.grayseal.bookstore.services;
+
+import com.grayseal.bookstore.cache.CacheGenerations;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.Category;
+import com.grayseal.bookstore.redis.BatchReader;
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Secondary indexes of the books by category, author and language, and the filter evaluated over them.
+ *
+ * <p>Every indexed value has a set of the ids of its books, {@code <Book keyspace>:filter:<field>:<value>}.
+ * Categories are indexed by id, authors and languages by their lowercase value, so filtering is case
+ * insensitive. The sets are maintained on every book write through {@link EntityWriteHook}, and the ids of
+ * the indexed books are kept in one more set, so a missing or incomplete index can be detected at startup.</p>
+ *
+ * <p>A filter matches the books having any of the values given for a field, and all of the fields given. It
+ * is evaluated in Redis by {@code scripts/filter-books.lua}, which stores the matching ids in a sorted set for
+ * {@code app.books.filter.ttl}: further pages of a filter, and hot filters requested by many clients, are read
+ * from it. Result keys start with the generation of the book cache, which every book and category write bumps,
+ * so a write is visible to the next filter at once.</p>
+ */
+@Component
+public class BookFilterIndex implements EntityWriteHook<Book> {
+
+    public static final String CATEGORY = "category";
+    public static final String AUTHOR = "author";
+    public static final String LANGUAGE = "language";
+
+    private static final String PREFIX = Book.class.getName() + ":filter:";
+    private static final String INDEXED_KEY = PREFIX + "indexed";
+    private static final int REBUILD_BATCH_SIZE = 500;
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> FILTER_SCRIPT = RedisScript.of(new ClassPathResource("scripts/filter-books.lua"), List.class);
+
+    /**
+     * A page of the books matching a filter, and the number of books matching it.
+     */
+    public record FilterPage(List<Book> books, long total) {
+    }
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private BatchReader batchReader;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
+    @Value("${app.books.filter.ttl:PT30S}")
+    private Duration ttl;
+
+    @Value("${app.books.filter.maxValues:20}")
+    private Integer maxValues;
+
+    @Override
+    public Class<Book> getType() {
+        return Book.class;
+    }
+
+    @Override
+    public void afterSave(RedisConnection connection, Book book) {
+        byte[] id = bytes(book.getId());
+        indexKeys(book).forEach(key -> connection.setCommands().sAdd(bytes(key), id));
+        connection.setCommands().sAdd(bytes(INDEXED_KEY), id);
+    }
+
+    @Override
+    public void afterDelete(RedisConnection connection, Book book) {
+        byte[] id = bytes(book.getId());
+        indexKeys(book).forEach(key -> connection.setCommands().sRem(bytes(key), id));
+        connection.setCommands().sRem(bytes(INDEXED_KEY), id);
+    }
+
+    /**
+     * Retrieves a page of the books matching a filter, sorted by id. Fields without values are not filtered on.
+     *
+     * @param categories the category ids
+     * @param authors    the authors
+     * @param languages  the languages
+     * @param offset     the number of matching books to skip
+     * @param count      the number of books to return
+     * @return the page of books
+     * @throws IllegalArgumentException if no value, or more than {@code app.books.filter.maxValues}, are given
+     */
+    public FilterPage filter(Collection<String> categories, Collection<String> authors, Collection<String> languages,
+                             long offset, int count) {
+        List<Set<String>> criteria = new ArrayList<>();
+        StringBuilder query = new StringBuilder();
+        addCriterion(criteria, query, CATEGORY, categories);
+        addCriterion(criteria, query, AUTHOR, authors);
+        addCriterion(criteria, query, LANGUAGE, languages);
+        int values = criteria.stream().mapToInt(Set::size).sum();
+        if (values == 0 || values > maxValues) {
+            throw new IllegalArgumentException("A filter takes between 1 and " + maxValues + " values");
+        }
+
+        String resultKey = PREFIX + "result:" + cacheGenerations.get(CatalogResponses.BOOKS_CACHE) + ":" + query;
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>(List.of(String.valueOf(ttl.toMillis()), String.valueOf(offset), String.valueOf(offset + count - 1)));
+        keys.add(resultKey);
+        for (int i = 0; i < criteria.size(); i++) {
+            if (criteria.get(i).size() > 1) {
+                keys.add(resultKey + ":union:" + i);
+            }
+            keys.addAll(criteria.get(i));
+            args.add(String.valueOf(criteria.get(i).size()));
+        }
+
+        List<?> reply = redisTemplate.execute(FILTER_SCRIPT, keys, args.toArray());
+        long total = ((Number) reply.get(0)).longValue();
+        List<String> ids = ((List<?>) reply.get(1)).stream().map(String::valueOf).toList();
+        return new FilterPage(ids.isEmpty() ? List.of() : batchReader.findAllById(Book.class, ids), total);
+    }
+
+    /**
+     * @return the number of books in the indexes
+     */
+    public long size() {
+        Long size = redisTemplate.opsForSet().size(INDEXED_KEY);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Rebuilds the indexes from the {@code Book} id set, after deleting them. Filters evaluated while the
+     * rebuild runs may miss books, so it is meant to run at startup.
+     *
+     * @return the number of books indexed
+     */
+    public long rebuild() {
+        List<String> existing = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(PREFIX + "*").count(REBUILD_BATCH_SIZE).build())) {
+            cursor.forEachRemaining(existing::add);
+        }
+        if (!existing.isEmpty()) {
+            redisTemplate.delete(existing);
+        }
+
+        long indexed = 0;
+        List<String> ids = new ArrayList<>(REBUILD_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().count(REBUILD_BATCH_SIZE).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(Book.class.getName(), options)) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next());
+                if (ids.size() == REBUILD_BATCH_SIZE) {
+                    indexed += rebuild(ids);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            indexed += rebuild(ids);
+        }
+        return indexed;
+    }
+
+    private int rebuild(List<String> ids) {
+        List<Book> books = batchReader.findAllById(Book.class, ids);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            books.forEach(book -> afterSave(connection, book));
+            return null;
+        });
+        return books.size();
+    }
+
+    private static void addCriterion(List<Set<String>> criteria, StringBuilder query, String field, Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        // sorted, so the same filter always maps to the same result key
+        Set<String> normalized = new TreeSet<>();
+        values.forEach(value -> normalized.add(field.equals(CATEGORY) ? value : normalize(value)));
+        criteria.add(normalized.stream().map(value -> key(field, value)).collect(Collectors.toCollection(LinkedHashSet::new)));
+        // each value is prefixed with its length, so values containing the separators cannot make filters collide
+        query.append(field).append('=');
+        normalized.forEach(value -> query.append(value.length()).append(':').append(value).append('|'));
+        query.append(';');
+    }
+
+    private static Set<String> indexKeys(Book book) {
+        Set<String> keys = new HashSet<>();
+        if (book.getCategories() != null) {
+            book.getCategories().stream().map(Category::getId).filter(Objects::nonNull).forEach(id -> keys.add(key(CATEGORY, id)));
+        }
+        if (book.getAuthors() != null) {
+            book.getAuthors().stream().filter(author -> author != null && !author.isBlank()).forEach(author -> keys.add(key(AUTHOR, normalize(author))));
+        }
+        if (book.getLanguage() != null && !book.getLanguage().isBlank()) {
+            keys.add(key(LANGUAGE, normalize(book.getLanguage())));
+        }
+        return keys;
+    }
+
+    static String key(String field, String value) {
+        return PREFIX + field + ":" + value;
+    }
+
+    static String normalize(String value) {
+        return value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,192 @@
+package com.grayseal.bookstore.services;
+
+import com.grayseal.bookstore.cache.BloomFilter;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter over the ids of all books, answering lookups of ISBNs that definitely do not exist without a
+ * round trip to Redis.
+ *
+ * <p>Every instance holds the filter in memory. Its bits are shared through a Redis bitmap whose key carries the
+ * filter size ({@code <Book keyspace>:bloom:<bits>:<hash functions>}), so changing
+ * {@code app.books.bloom.expectedInsertions} or {@code app.books.bloom.falsePositiveRate} starts a new one. On
+ * startup each instance builds the filter from the {@code Book} id set and merges it with the bitmap, so books
+ * saved while no instance maintained the bitmap are never missed. Every book save sets the bits of its id in the
+ * bitmap and announces the id on {@code app.books.bloom.channel}, so the other instances add it too; a bulk write
+ * announces the ids of its whole batch in one message, one id per line. Deleted
+ * books keep their bits, which only costs them the round trip a miss costs.</p>
+ *
+ * <p>Until the filter is loaded, and when it is disabled, every id might exist.</p>
+ */
+@Component
+@Slf4j
+public class BookIdFilter implements EntityWriteHook<Book>, MessageListener {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    @Value("${app.books.bloom.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${app.books.bloom.expectedInsertions:100000}")
+    private Long expectedInsertions;
+
+    @Value("${app.books.bloom.falsePositiveRate:0.01}")
+    private Double falsePositiveRate;
+
+    @Value("${app.books.bloom.channel:bookstore:books:bloom}")
+    private String channel;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private BloomFilter filter;
+    private String key;
+    private volatile boolean loaded;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * The size and state of the filter, and how many lookups it answered.
+     */
+    public record Stats(boolean enabled, boolean loaded, long expectedInsertions, double falsePositiveRate,
+                        long bits, int hashFunctions, long memoryBytes, long approximateBooks,
+                        double expectedFalsePositiveRate, long lookups, long rejected) {
+    }
+
+    @PostConstruct
+    void start() {
+        filter = BloomFilter.create(expectedInsertions, falsePositiveRate);
+        key = Book.class.getName() + ":bloom:" + filter.bits() + ":" + filter.hashFunctions();
+        // subscribed before loading, so books saved by other instances meanwhile are not missed
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    @Override
+    public Class<Book> getType() {
+        return Book.class;
+    }
+
+    @Override
+    public void afterSave(RedisConnection connection, Book book) {
+        afterWrites(connection, List.of(), List.of(book));
+    }
+
+    @Override
+    public void afterDelete(RedisConnection connection, Book book) {
+    }
+
+    @Override
+    public void afterWrites(RedisConnection connection, List<Book> previous, List<Book> saved) {
+        if (!enabled || saved.isEmpty()) {
+            return;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (Book book : saved) {
+            // added locally at once, so this instance finds the book before the message comes back
+            filter.put(book.getId());
+            for (long offset : filter.offsets(book.getId())) {
+                connection.stringCommands().setBit(bytes(key), offset, true);
+            }
+            ids.append(ids.isEmpty() ? "" : "\n").append(book.getId());
+        }
+        connection.publish(bytes(channel), bytes(ids.toString()));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        for (String bookId : new String(message.getBody(), StandardCharsets.UTF_8).split("\n")) {
+            filter.put(bookId);
+        }
+    }
+
+    /**
+     * @param bookId the book id
+     * @return false if no book has this id; true if one might
+     */
+    public boolean mightExist(String bookId) {
+        if (!enabled || !loaded) {
+            return true;
+        }
+        lookups.increment();
+        if (filter.mightContain(bookId)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Builds the filter from the {@code Book} id set and merges it with the Redis bitmap, both ways: the bits of
+     * this instance are added with {@code BITOP OR}, then the bitmap is read back, so bits set by concurrent saves
+     * or by other instances are kept. From then on, lookups are answered by the filter.
+     *
+     * @return the number of book ids read
+     */
+    public long load() {
+        if (!enabled) {
+            return 0;
+        }
+        long books = 0;
+        ScanOptions options = ScanOptions.scanOptions().count(LOAD_BATCH_SIZE).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(Book.class.getName(), options)) {
+            while (cursor.hasNext()) {
+                filter.put(cursor.next());
+                books++;
+            }
+        }
+        String buildKey = key + ":build:" + UUID.randomUUID();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(bytes(buildKey), filter.toBytes());
+            connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, bytes(key), bytes(key), bytes(buildKey));
+            connection.keyCommands().del(bytes(buildKey));
+            return null;
+        });
+        filter.or(get(key));
+        loaded = true;
+
+        Stats stats = stats();
+        log.info(">>>> Book id filter built from " + books + " books, ~" + stats.approximateBooks() + " with other instances: "
+                + stats.bits() + " bits (" + stats.memoryBytes() / 1024 + " KiB), " + stats.hashFunctions()
+                + " hash functions, false-positive rate " + stats.falsePositiveRate() + " configured, "
+                + String.format("%.6f", stats.expectedFalsePositiveRate()) + " expected");
+        return books;
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, loaded, expectedInsertions, falsePositiveRate, filter.bits(), filter.hashFunctions(),
+                filter.bits() / Byte.SIZE, filter.approximateElementCount(), filter.expectedFalsePositiveRate(),
+                lookups.sum(), rejected.sum());
+    }
+
+    private byte[] get(String key) {
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(bytes(key)));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
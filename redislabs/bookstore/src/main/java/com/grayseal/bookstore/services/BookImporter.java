@@ -0,0 +1,274 @@
+package com.grayseal.bookstore.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.Category;
+import com.grayseal.bookstore.redis.BatchReader;
+import com.grayseal.bookstore.redis.BulkWriteStats;
+import com.grayseal.bookstore.redis.BulkWriter;
+import com.grayseal.bookstore.repositories.CategoryRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Imports books from newline-delimited JSON, one book per line, as a stream of any length.
+ *
+ * <p>Lines are read and parsed one at a time, and books are written by the {@link BulkWriter} in pipelined
+ * batches of {@code app.bulk.batchSize} on a writer thread, while the next batch is parsed. At most
+ * {@code app.books.import.queuedBatches} batches wait for the writer: when Redis falls behind, the reader
+ * waits too and stops reading the request body, so the client is slowed down by TCP flow control instead of
+ * the books piling up on the heap. Memory use is bounded by the queued batches and
+ * {@code app.books.import.maxLineLength}, whatever the size of the catalog.</p>
+ *
+ * <p>A line has the JSON of a {@link Book}, as served by the API. Categories are resolved by id or by name
+ * against the categories loaded once per import, and created when no category has the name. Lines that are not
+ * valid JSON or fail validation are skipped and reported. Books that already exist are overwritten, and the
+ * write hooks first see their stored version, as for repository updates.</p>
+ */
+@Component
+@Slf4j
+public class BookImporter {
+
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    @Autowired
+    private BatchReader batchReader;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${app.books.import.queuedBatches:2}")
+    private Integer queuedBatches;
+
+    @Value("${app.books.import.maxLineLength:1048576}")
+    private Integer maxLineLength;
+
+    @Value("${app.books.import.maxErrors:100}")
+    private Integer maxErrors;
+
+    /**
+     * A line that was not imported.
+     */
+    public record LineError(long line, String message) {
+    }
+
+    /**
+     * The outcome of an import. Only the first {@code app.books.import.maxErrors} errors are listed.
+     */
+    public record ImportResult(long lines, long imported, long rejected, long categoriesCreated, long tookMillis,
+                               BulkWriteStats writes, List<LineError> errors) {
+    }
+
+    /**
+     * Imports the books of a stream, until its end.
+     *
+     * @param body the NDJSON stream, in UTF-8
+     * @return the numbers of lines read, books imported and lines rejected
+     * @throws IOException if the stream cannot be read
+     */
+    public ImportResult importBooks(InputStream body) throws IOException {
+        long start = System.nanoTime();
+        ObjectReader bookReader = objectMapper.readerFor(Book.class);
+        Categories categories = new Categories();
+        BulkWriteStats stats = new BulkWriteStats();
+        List<LineError> errors = new ArrayList<>();
+        Semaphore queue = new Semaphore(queuedBatches);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        long lines = 0;
+        long rejected = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 64 * 1024);
+        // one writer, so books are written in the order of the stream
+        try (ExecutorService writer = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("book-import-writer").factory())) {
+            Map<String, Book> batch = new LinkedHashMap<>();
+            StringBuilder line = new StringBuilder();
+            while (failure.get() == null) {
+                int length = readLine(reader, line);
+                if (length < 0) {
+                    break;
+                }
+                lines++;
+                String text = line.toString();
+                String error;
+                if (length > maxLineLength) {
+                    error = "Line longer than " + maxLineLength + " characters";
+                } else if (text.isBlank()) {
+                    continue;
+                } else {
+                    error = parse(bookReader, text, categories, batch);
+                }
+                if (error != null) {
+                    rejected++;
+                    if (errors.size() < maxErrors) {
+                        errors.add(new LineError(lines, error));
+                    }
+                }
+                if (batch.size() >= bulkWriter.getBatchSize()) {
+                    submit(writer, queue, new ArrayList<>(batch.values()), stats, failure);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty() && failure.get() == null) {
+                submit(writer, queue, new ArrayList<>(batch.values()), stats, failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while importing books", e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        ImportResult result = new ImportResult(lines, stats.getEntities(), rejected, categories.created,
+                (System.nanoTime() - start) / 1_000_000, stats, errors);
+        log.info(">>>> Imported " + result.imported() + " books from " + lines + " lines, " + rejected + " rejected, "
+                + categories.created + " categories created. Bulk write: " + stats);
+        return result;
+    }
+
+    /**
+     * Parses a line and adds its book to the batch, replacing a book of the batch with the same id.
+     *
+     * @return why the line was rejected, or {@code null}
+     */
+    private String parse(ObjectReader bookReader, String line, Categories categories, Map<String, Book> batch) {
+        Book book;
+        try {
+            book = bookReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return "Invalid JSON: " + e.getOriginalMessage();
+        }
+        if (book == null) {
+            return "Not a book";
+        }
+        Set<ConstraintViolation<Book>> violations = validator.validate(book);
+        if (!violations.isEmpty()) {
+            return violations.stream().map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted().collect(Collectors.joining(", "));
+        }
+        Set<Category> resolved = new HashSet<>();
+        for (Category category : book.getCategories() == null ? Set.<Category>of() : book.getCategories()) {
+            Category found = categories.resolve(category);
+            if (found == null) {
+                return "Category without a known id or a name";
+            }
+            resolved.add(found);
+        }
+        book.setCategories(resolved);
+        batch.remove(book.getId());
+        batch.put(book.getId(), book);
+        return null;
+    }
+
+    /**
+     * Queues a batch for the writer, waiting while {@code app.books.import.queuedBatches} batches are queued.
+     */
+    private void submit(ExecutorService writer, Semaphore queue, List<Book> batch, BulkWriteStats stats,
+                        AtomicReference<RuntimeException> failure) throws InterruptedException {
+        queue.acquire();
+        writer.execute(() -> {
+            try {
+                if (failure.get() == null) {
+                    List<Book> previous = batchReader.findAllById(Book.class, batch.stream().map(Book::getId).toList());
+                    bulkWriter.write(batch, previous, stats);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                queue.release();
+            }
+        });
+    }
+
+    /**
+     * Reads a line into {@code line}, without its terminator. Characters beyond {@code app.books.import.maxLineLength}
+     * are skipped rather than stored.
+     *
+     * @return the length of the line, or -1 at the end of the stream
+     */
+    private int readLine(BufferedReader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int length = 0;
+        int c;
+        while ((c = reader.read()) != -1 && c != '\n') {
+            if (c == '\r') {
+                continue;
+            }
+            if (length++ < maxLineLength) {
+                line.append((char) c);
+            }
+        }
+        return c == -1 && length == 0 ? -1 : length;
+    }
+
+    /**
+     * The categories of an import, by id and by name.
+     */
+    private class Categories {
+
+        private final Map<String, Category> byId = new HashMap<>();
+        private final Map<String, Category> byName = new HashMap<>();
+        private long created;
+
+        Categories() {
+            categoryRepository.findAll().forEach(category -> {
+                byId.put(category.getId(), category);
+                byName.putIfAbsent(category.getName(), category);
+            });
+        }
+
+        /**
+         * @return the stored category with the id of the given one, else with its name, which is created if
+         * needed; {@code null} if it has neither a known id nor a name
+         */
+        Category resolve(Category category) {
+            if (category == null) {
+                return null;
+            }
+            if (category.getId() != null && byId.containsKey(category.getId())) {
+                return byId.get(category.getId());
+            }
+            if (category.getName() == null || category.getName().isBlank()) {
+                return null;
+            }
+            return byName.computeIfAbsent(category.getName(), name -> {
+                Category createdCategory = Category.builder().name(name).build();
+                bulkWriter.saveAll(List.of(createdCategory));
+                byId.put(createdCategory.getId(), createdCategory);
+                created++;
+                return createdCategory;
+            });
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.grayseal.bookstore.services;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.BookRating;
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * "Readers also rated" recommendations: for every book, the books most often rated highly by the same users.
+ *
+ * <p>A rating is high when it has at least {@code app.recommendations.minRating} stars. Every user has a hash of
+ * the books they rated highly, and every book a sorted set of the other books, scored by the number of users who
+ * rated both highly. Both are updated by a server-side script on every rating write, so a recommendation is a
+ * single {@code ZREVRANGE} of the set of the book. The sets can be recomputed from the stored ratings by
+ * {@link #rebuild()}, which counts the co-ratings of the books in parallel.</p>
+ *
+ * <p>A single rating write sends the script with {@code EVAL}; a bulk write loads it once with {@code SCRIPT LOAD}
+ * at the start of its pipeline and then calls it by SHA with {@code EVALSHA}, so it does not depend on what the
+ * Redis script cache held before. The script updates the sorted sets of every other book
+ * the user likes, keys it cannot declare up front, so it requires a single Redis node rather than a cluster.</p>
+ */
+@Component
+public class BookRecommendations implements EntityWriteHook<BookRating> {
+
+    private static final String LIKED_KEY_PREFIX = BookRating.class.getName() + ":liked:";
+    private static final String LIKERS_KEY = BookRating.class.getName() + ":likers";
+    private static final String SIMILAR_KEY_PREFIX = BookRating.class.getName() + ":similar:";
+    private static final String BOOK_KEY_PREFIX = Book.class.getName() + ":";
+    private static final String USER_KEY_PREFIX = User.class.getName() + ":";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final RedisScript<Long> CO_RATING_SCRIPT = RedisScript.of(new ClassPathResource("scripts/co-rating.lua"), Long.class);
+
+    @Value("${app.recommendations.minRating:4}")
+    private Integer minRating;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * A book rated highly by readers of another, and the number of those readers.
+     */
+    public record SimilarBook(String bookId, long readers) {
+    }
+
+    @Override
+    public Class<BookRating> getType() {
+        return BookRating.class;
+    }
+
+    @Override
+    public void afterSave(RedisConnection connection, BookRating rating) {
+        update(connection, rating, 1, false);
+    }
+
+    @Override
+    public void afterDelete(RedisConnection connection, BookRating rating) {
+        update(connection, rating, -1, false);
+    }
+
+    @Override
+    public void afterWrites(RedisConnection connection, List<BookRating> previous, List<BookRating> saved) {
+        // loaded ahead of the calls by SHA in the same pipeline, so they find it even after the cache was flushed
+        connection.scriptingCommands().scriptLoad(bytes(CO_RATING_SCRIPT.getScriptAsString()));
+        previous.forEach(rating -> update(connection, rating, -1, true));
+        saved.forEach(rating -> update(connection, rating, 1, true));
+    }
+
+    /**
+     * Retrieves the books most often rated highly by the readers who rated a book highly, in a single round trip.
+     *
+     * @param bookId the book id
+     * @param limit  the number of books to return
+     * @return the books, most shared readers first; empty if no reader rated the book highly
+     */
+    public List<SimilarBook> similar(String bookId, int limit) {
+        Set<ZSetOperations.TypedTuple<String>> entries = redisTemplate.opsForZSet()
+                .reverseRangeWithScores(SIMILAR_KEY_PREFIX + bookId, 0, limit - 1);
+        List<SimilarBook> similar = new ArrayList<>();
+        if (entries != null) {
+            entries.forEach(entry -> similar.add(new SimilarBook(entry.getValue(), entry.getScore().longValue())));
+        }
+        return similar;
+    }
+
+    /**
+     * @return the number of users who rated at least one book highly
+     */
+    public long readers() {
+        Long size = redisTemplate.opsForSet().size(LIKERS_KEY);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Recomputes the liked books of every user and the similar books of every book from the stored
+     * {@code BookRating} hashes. Ratings are iterated with {@code SSCAN} and read in pipelined batches; the
+     * co-ratings are then counted per book on the common fork-join pool. Ratings written while the rebuild
+     * runs may be missed, so it is meant to run at startup.
+     *
+     * @return the number of high ratings
+     */
+    public long rebuild() {
+        Map<String, Map<String, Long>> liked = new HashMap<>();
+        long ratings = 0;
+        List<String> ids = new ArrayList<>(REBUILD_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().count(REBUILD_BATCH_SIZE).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(BookRating.class.getName(), options)) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next());
+                if (ids.size() == REBUILD_BATCH_SIZE) {
+                    ratings += collect(ids, liked);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            ratings += collect(ids, liked);
+        }
+
+        Map<String, Set<String>> readers = new HashMap<>();
+        liked.forEach((userId, books) -> books.keySet().forEach(bookId -> readers.computeIfAbsent(bookId, id -> new HashSet<>()).add(userId)));
+        Map<String, Map<String, Long>> similar = new ConcurrentHashMap<>();
+        readers.entrySet().parallelStream().forEach(book -> {
+            Map<String, Long> counts = new HashMap<>();
+            book.getValue().forEach(userId -> liked.get(userId).keySet().forEach(other -> {
+                if (!other.equals(book.getKey())) {
+                    counts.merge(other, 1L, Long::sum);
+                }
+            }));
+            if (!counts.isEmpty()) {
+                similar.put(book.getKey(), counts);
+            }
+        });
+
+        List<String> staleKeys = new ArrayList<>();
+        for (String prefix : List.of(LIKED_KEY_PREFIX, SIMILAR_KEY_PREFIX)) {
+            try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(prefix + "*").count(REBUILD_BATCH_SIZE).build())) {
+                cursor.forEachRemaining(staleKeys::add);
+            }
+        }
+        staleKeys.add(LIKERS_KEY);
+        redisTemplate.delete(staleKeys);
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            liked.forEach((userId, books) -> {
+                Map<byte[], byte[]> fields = new HashMap<>();
+                books.forEach((bookId, count) -> fields.put(bytes(bookId), bytes(String.valueOf(count))));
+                connection.hashCommands().hMSet(bytes(LIKED_KEY_PREFIX + userId), fields);
+                connection.setCommands().sAdd(bytes(LIKERS_KEY), bytes(userId));
+            });
+            similar.forEach((bookId, counts) -> {
+                Set<Tuple> tuples = new HashSet<>();
+                counts.forEach((other, count) -> tuples.add(new DefaultTuple(bytes(other), (double) count)));
+                connection.zSetCommands().zAdd(bytes(SIMILAR_KEY_PREFIX + bookId), tuples);
+            });
+            return null;
+        });
+        return ratings;
+    }
+
+    private int collect(List<String> ratingIds, Map<String, Map<String, Long>> liked) {
+        List<Object> fields = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            ratingIds.forEach(id -> connection.hashCommands().hMGet(bytes(BookRating.class.getName() + ":" + id),
+                    bytes("user"), bytes("book"), bytes("rating")));
+            return null;
+        });
+        int collected = 0;
+        for (Object result : fields) {
+            List<?> values = (List<?>) result;
+            if (values == null || values.contains(null) || Integer.parseInt(String.valueOf(values.get(2))) < minRating) {
+                continue;
+            }
+            // references are stored as <keyspace>:<id>
+            String userId = String.valueOf(values.get(0)).substring(USER_KEY_PREFIX.length());
+            String bookId = String.valueOf(values.get(1)).substring(BOOK_KEY_PREFIX.length());
+            liked.computeIfAbsent(userId, id -> new HashMap<>()).merge(bookId, 1L, Long::sum);
+            collected++;
+        }
+        return collected;
+    }
+
+    private void update(RedisConnection connection, BookRating rating, int delta, boolean loaded) {
+        if (rating.getUser() == null || rating.getUser().getId() == null || rating.getBook() == null
+                || rating.getBook().getId() == null || rating.getRating() == null || rating.getRating() < minRating) {
+            return;
+        }
+        String userId = rating.getUser().getId();
+        String bookId = rating.getBook().getId();
+        byte[][] keysAndArgs = {bytes(LIKED_KEY_PREFIX + userId), bytes(LIKERS_KEY), bytes(SIMILAR_KEY_PREFIX + bookId),
+                bytes(userId), bytes(bookId), bytes(String.valueOf(delta)), bytes(SIMILAR_KEY_PREFIX)};
+        if (loaded) {
+            connection.scriptingCommands().evalSha(CO_RATING_SCRIPT.getSha1(), ReturnType.INTEGER, 3, keysAndArgs);
+        } else {
+            connection.scriptingCommands().eval(bytes(CO_RATING_SCRIPT.getScriptAsString()), ReturnType.INTEGER, 3, keysAndArgs);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,453 @@
+package com.grayseal.bookstore.services;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.redis.BatchReader;
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import jakarta.annotation.PostConstruct;
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index over the book catalog for full-text and prefix search.
+ *
+ * <p>Titles, subtitles, authors and descriptions are tokenized into lowercase terms, weighted by field. The
+ * term dictionary is sorted, so the last word of a query is treated as a prefix and expanded to the matching
+ * terms, which gives autocomplete. A book matches when it contains every query term, and matches are ranked
+ * by the sum of their field weights times the inverse document frequency of each term.</p>
+ *
+ * <p>The index is built from Redis at startup and kept up to date through {@link EntityWriteHook} on every
+ * book write made by this instance. The ids of the books written are announced on {@code app.books.search.channel},
+ * once per batch, and the other instances read those books from Redis again to update their own index. Queries
+ * never touch Redis.</p>
+ *
+ * <p>Message format: {@code <instance id>\n<book id>[\n<book id>...]}.</p>
+ */
+@Component
+public class BookSearchIndex implements EntityWriteHook<Book>, MessageListener {
+
+    private static final int BUILD_BATCH_SIZE = 500;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "in", "of", "on", "the", "to", "for", "with");
+
+    private static final float TITLE_WEIGHT = 4f;
+    private static final float SUBTITLE_WEIGHT = 2f;
+    private static final float AUTHOR_WEIGHT = 3f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    @Value("${app.books.search.channel:bookstore:books:search}")
+    private String channel;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private BatchReader batchReader;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // term -> (document -> weight)
+    private final NavigableMap<String, Map<Integer, Float>> postings = new TreeMap<>();
+    private final Map<String, Integer> documentIds = new HashMap<>();
+    private final List<SearchHit> documents = new ArrayList<>();
+    private final List<Set<String>> documentTerms = new ArrayList<>();
+    private int size;
+
+    /**
+     * A search result, holding the fields needed to render it without loading the book.
+     */
+    @Data
+    @Builder(toBuilder = true)
+    public static class SearchHit {
+        private String id;
+        private String title;
+        private String subtitle;
+        private Set<String> authors;
+        private String thumbnail;
+        private float score;
+    }
+
+    @Data
+    @Builder
+    public static class IndexStats {
+        private int documents;
+        private int terms;
+        private long postings;
+        private long estimatedBytes;
+    }
+
+    @PostConstruct
+    void start() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    @Override
+    public Class<Book> getType() {
+        return Book.class;
+    }
+
+    @Override
+    public void afterSave(RedisConnection connection, Book book) {
+        index(book);
+        publish(connection, List.of(book.getId()));
+    }
+
+    @Override
+    public void afterDelete(RedisConnection connection, Book book) {
+        remove(book.getId());
+        publish(connection, List.of(book.getId()));
+    }
+
+    /**
+     * Announces the books of a bulk write; the local index is updated by {@link #afterWritesStored(List, List)},
+     * once they are stored.
+     */
+    @Override
+    public void afterWrites(RedisConnection connection, List<Book> previous, List<Book> saved) {
+        List<String> ids = new ArrayList<>(previous.size() + saved.size());
+        previous.forEach(book -> ids.add(book.getId()));
+        saved.forEach(book -> ids.add(book.getId()));
+        publish(connection, ids);
+    }
+
+    @Override
+    public void afterWritesStored(List<Book> previous, List<Book> saved) {
+        Set<String> savedIds = new HashSet<>();
+        saved.forEach(book -> savedIds.add(book.getId()));
+        // books saved again are replaced in place by index()
+        previous.stream().map(Book::getId).filter(id -> !savedIds.contains(id)).forEach(this::remove);
+        saved.forEach(this::index);
+    }
+
+    /**
+     * Reads the books written by another instance from Redis and updates the index with them; books that no
+     * longer exist are removed.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+        if (parts.length < 2 || instanceId.equals(parts[0])) {
+            return;
+        }
+        List<String> ids = Arrays.asList(parts).subList(1, parts.length);
+        List<Book> books = batchReader.findAllById(Book.class, ids, false);
+        Set<String> found = new HashSet<>();
+        books.forEach(book -> {
+            index(book);
+            found.add(book.getId());
+        });
+        ids.stream().filter(id -> !found.contains(id)).forEach(this::remove);
+    }
+
+    /**
+     * Searches the catalog. The last word of the query matches any term it is a prefix of.
+     *
+     * @param query the words to search for
+     * @param limit the maximum number of hits to return
+     * @return the best matching books, best first
+     */
+    public List<SearchHit> search(String query, int limit) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return List.of();
+        }
+        // the last word is kept even if it is a stop word, as it may be the start of a longer term
+        List<String> terms = new ArrayList<>(words.subList(0, words.size() - 1));
+        terms.removeIf(STOP_WORDS::contains);
+        String last = words.get(words.size() - 1);
+        terms.add(last);
+        lock.readLock().lock();
+        try {
+            Map<Integer, Float> scores = null;
+            for (int i = 0; i < terms.size(); i++) {
+                boolean prefix = i == terms.size() - 1;
+                Map<Integer, Float> matches = match(terms.get(i), prefix);
+                if (prefix && matches.isEmpty() && STOP_WORDS.contains(last)) {
+                    // a complete stop word, which is not indexed: the other words decide
+                    if (scores == null) {
+                        return List.of();
+                    }
+                    break;
+                }
+                if (scores == null) {
+                    scores = matches;
+                } else {
+                    // every term must match
+                    Map<Integer, Float> intersection = new HashMap<>();
+                    for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+                        Float score = matches.get(entry.getKey());
+                        if (score != null) {
+                            intersection.put(entry.getKey(), entry.getValue() + score);
+                        }
+                    }
+                    scores = intersection;
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Float>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(entry -> documents.get(entry.getKey()).toBuilder().score(entry.getValue()).build())
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces a book in the index.
+     *
+     * @param book the book to index
+     */
+    public void index(Book book) {
+        Map<String, Float> weights = new HashMap<>();
+        addTerms(weights, book.getTitle(), TITLE_WEIGHT);
+        addTerms(weights, book.getSubtitle(), SUBTITLE_WEIGHT);
+        if (book.getAuthors() != null) {
+            book.getAuthors().forEach(author -> addTerms(weights, author, AUTHOR_WEIGHT));
+        }
+        addTerms(weights, book.getDescription(), DESCRIPTION_WEIGHT);
+
+        SearchHit document = SearchHit.builder()
+                .id(book.getId())
+                .title(book.getTitle())
+                .subtitle(book.getSubtitle())
+                .authors(book.getAuthors())
+                .thumbnail(book.getThumbnail())
+                .build();
+
+        lock.writeLock().lock();
+        try {
+            Integer documentId = documentIds.get(book.getId());
+            if (documentId != null) {
+                removePostings(documentId);
+                if (documents.get(documentId) == null) {
+                    size++;
+                }
+            } else {
+                documentId = documents.size();
+                documentIds.put(book.getId(), documentId);
+                documents.add(null);
+                documentTerms.add(null);
+                size++;
+            }
+            documents.set(documentId, document);
+            documentTerms.set(documentId, weights.keySet());
+            for (Map.Entry<String, Float> weight : weights.entrySet()) {
+                postings.computeIfAbsent(weight.getKey(), term -> new HashMap<>()).put(documentId, weight.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a book from the index.
+     *
+     * @param bookId the id of the book to remove
+     */
+    public void remove(String bookId) {
+        lock.writeLock().lock();
+        try {
+            Integer documentId = documentIds.get(bookId);
+            if (documentId != null && documents.get(documentId) != null) {
+                removePostings(documentId);
+                // the slot is kept for the id, so a book saved again takes it back instead of leaking a new one
+                documents.set(documentId, null);
+                documentTerms.set(documentId, null);
+                size--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the index by streaming the {@code Book} id set with {@code SSCAN} and loading the books in
+     * pipelined batches.
+     *
+     * @return the number of books indexed
+     */
+    public int rebuild() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentIds.clear();
+            documents.clear();
+            documentTerms.clear();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<String> ids = new ArrayList<>(BUILD_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().count(BUILD_BATCH_SIZE).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(Book.class.getName(), options)) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next());
+                if (ids.size() == BUILD_BATCH_SIZE) {
+                    batchReader.findAllById(Book.class, ids, false).forEach(this::index);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            batchReader.findAllById(Book.class, ids, false).forEach(this::index);
+        }
+        return size();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates the heap used by the index, assuming compressed object pointers: about 40 bytes per term
+     * string plus its characters, 50 bytes per dictionary node and posting map, and 50 bytes per posting
+     * (a hash map node with boxed key and value).
+     *
+     * @return the index statistics
+     */
+    public IndexStats stats() {
+        lock.readLock().lock();
+        try {
+            long postingCount = 0;
+            long bytes = 0;
+            for (Map.Entry<String, Map<Integer, Float>> entry : postings.entrySet()) {
+                postingCount += entry.getValue().size();
+                bytes += 40 + entry.getKey().length() + 100;
+            }
+            bytes += postingCount * 50;
+            for (SearchHit document : documents) {
+                if (document != null) {
+                    bytes += 120 + length(document.getId()) + length(document.getTitle()) + length(document.getSubtitle())
+                            + length(document.getThumbnail());
+                }
+            }
+            return IndexStats.builder()
+                    .documents(size)
+                    .terms(postings.size())
+                    .postings(postingCount)
+                    .estimatedBytes(bytes)
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Integer, Float> match(String term, boolean prefix) {
+        Map<Integer, Float> matches = new HashMap<>();
+        if (prefix) {
+            NavigableMap<String, Map<Integer, Float>> expansions = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+            int expanded = 0;
+            for (Map.Entry<String, Map<Integer, Float>> expansion : expansions.entrySet()) {
+                if (expanded++ == MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                // a document matching several expansions keeps its best one
+                float idf = idf(expansion.getValue().size());
+                expansion.getValue().forEach((document, weight) -> matches.merge(document, weight * idf, Math::max));
+            }
+        } else {
+            Map<Integer, Float> documentsWithTerm = postings.get(term);
+            if (documentsWithTerm != null) {
+                float idf = idf(documentsWithTerm.size());
+                documentsWithTerm.forEach((document, weight) -> matches.put(document, weight * idf));
+            }
+        }
+        return matches;
+    }
+
+    private float idf(int documentFrequency) {
+        return (float) Math.log(1 + (double) size / documentFrequency);
+    }
+
+    private void removePostings(int documentId) {
+        Set<String> terms = documentTerms.get(documentId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Integer, Float> documentsWithTerm = postings.get(term);
+            if (documentsWithTerm != null) {
+                documentsWithTerm.remove(documentId);
+                if (documentsWithTerm.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static void addTerms(Map<String, Float> weights, String text, float weight) {
+        for (String term : tokenize(text)) {
+            weights.merge(term, weight, Float::sum);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = words(text);
+        terms.removeIf(STOP_WORDS::contains);
+        return terms;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                words.add(token);
+            }
+        }
+        return words;
+    }
+
+    private void publish(RedisConnection connection, List<String> bookIds) {
+        if (!bookIds.isEmpty()) {
+            connection.publish(channel.getBytes(StandardCharsets.UTF_8),
+                    (instanceId + "\n" + String.join("\n", bookIds)).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
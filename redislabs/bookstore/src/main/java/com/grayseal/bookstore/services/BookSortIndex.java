@@ -0,0 +1,252 @@
+package com.grayseal.bookstore.services;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.redis.BatchReader;
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorted-set indexes over the book catalog for keyset pagination by title, price and page count.
+ *
+ * <p>Every index is a lexicographically ordered sorted set (all scores are 0) whose members are
+ * {@code <sortable value>\0<book id>}. Numbers are zero padded to a fixed width so they sort like strings and
+ * ties are broken by id, which makes every member unique and lets a page start strictly after the last member
+ * of the previous page with {@code ZRANGE ... BYLEX LIMIT}, in O(log n + size) whatever the page depth.</p>
+ *
+ * <p>The indexes are maintained on every book write through {@link EntityWriteHook}. Members whose value no
+ * longer matches the stored book are removed lazily when a page containing them is served.</p>
+ */
+@Component
+@Slf4j
+public class BookSortIndex implements EntityWriteHook<Book> {
+
+    private static final String SEPARATOR = "\u0000";
+    // sorts after any digit or lowercase letter, so books without a value come last
+    private static final String MISSING = "\uFFFF";
+    private static final int MAX_TITLE_LENGTH = 100;
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    @Getter
+    public enum SortField {
+        TITLE("title"), PRICE("price"), PAGE_COUNT("pageCount");
+
+        private final String property;
+
+        SortField(String property) {
+            this.property = property;
+        }
+
+        public static SortField of(String property) {
+            return Arrays.stream(values())
+                    .filter(field -> field.property.equals(property))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unsupported sort field: " + property));
+        }
+    }
+
+    /**
+     * A page of books and the cursor to pass to get the next one, {@code null} on the last page.
+     */
+    public record BookPage(List<Book> books, String next) {
+    }
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private BatchReader batchReader;
+
+    @Override
+    public Class<Book> getType() {
+        return Book.class;
+    }
+
+    @Override
+    public void afterSave(RedisConnection connection, Book book) {
+        for (SortField field : SortField.values()) {
+            connection.zSetCommands().zAdd(bytes(key(field)), 0, bytes(member(field, book)));
+        }
+    }
+
+    @Override
+    public void afterDelete(RedisConnection connection, Book book) {
+        for (SortField field : SortField.values()) {
+            connection.zSetCommands().zRem(bytes(key(field)), bytes(member(field, book)));
+        }
+    }
+
+    /**
+     * Retrieves the page of books following the given cursor.
+     *
+     * @param field      the field to sort by
+     * @param descending whether to sort in descending order
+     * @param cursor     the cursor returned with the previous page, {@code null} for the first page
+     * @param size       the page size
+     * @return the page of books
+     * @throws IllegalArgumentException if the cursor was not issued for the given sort field
+     */
+    public BookPage page(SortField field, boolean descending, String cursor, int size) {
+        Range<String> range = Range.unbounded();
+        if (cursor != null) {
+            Range.Bound<String> after = Range.Bound.exclusive(decodeCursor(field, cursor));
+            range = descending ? Range.leftUnbounded(after) : Range.rightUnbounded(after);
+        }
+        Limit limit = Limit.limit().count(size);
+        Set<String> members = descending
+                ? redisTemplate.opsForZSet().reverseRangeByLex(key(field), range, limit)
+                : redisTemplate.opsForZSet().rangeByLex(key(field), range, limit);
+        if (members == null || members.isEmpty()) {
+            return new BookPage(List.of(), null);
+        }
+
+        List<String> ids = members.stream().map(BookSortIndex::idOf).toList();
+        Map<String, Book> books = new HashMap<>();
+        batchReader.findAllById(Book.class, ids).forEach(book -> books.put(book.getId(), book));
+
+        List<Book> page = new ArrayList<>(members.size());
+        List<String> stale = new ArrayList<>();
+        String last = null;
+        for (String member : members) {
+            Book book = books.get(idOf(member));
+            if (book != null && member.equals(member(field, book))) {
+                page.add(book);
+            } else {
+                stale.add(member);
+            }
+            last = member;
+        }
+        if (!stale.isEmpty()) {
+            log.info(">>>> Removing " + stale.size() + " stale members from " + key(field));
+            redisTemplate.opsForZSet().remove(key(field), stale.toArray());
+        }
+        return new BookPage(page, members.size() == size ? encodeCursor(field, last) : null);
+    }
+
+    public long size() {
+        Long size = redisTemplate.opsForZSet().zCard(key(SortField.TITLE));
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Rebuilds all indexes from the {@code Book} id set. The new indexes are built under temporary keys and
+     * swapped in with {@code RENAME}, so pages keep being served during the rebuild. Books written while the
+     * rebuild runs may be missed, so it is meant to run at startup.
+     *
+     * @return the number of books indexed
+     */
+    public long rebuild() {
+        // left over by a rebuild that did not finish, they would bring back books since deleted
+        List<String> leftovers = new ArrayList<>();
+        for (SortField field : SortField.values()) {
+            leftovers.add(rebuildKey(field));
+        }
+        redisTemplate.delete(leftovers);
+
+        long indexed = 0;
+        List<String> ids = new ArrayList<>(REBUILD_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().count(REBUILD_BATCH_SIZE).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(Book.class.getName(), options)) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next());
+                if (ids.size() == REBUILD_BATCH_SIZE) {
+                    indexed += rebuild(ids);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            indexed += rebuild(ids);
+        }
+
+        for (SortField field : SortField.values()) {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(rebuildKey(field)))) {
+                redisTemplate.rename(rebuildKey(field), key(field));
+            } else {
+                redisTemplate.delete(key(field));
+            }
+        }
+        return indexed;
+    }
+
+    private int rebuild(List<String> ids) {
+        List<Book> books = batchReader.findAllById(Book.class, ids, false);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            books.forEach(book -> {
+                for (SortField field : SortField.values()) {
+                    connection.zSetCommands().zAdd(bytes(rebuildKey(field)), 0, bytes(member(field, book)));
+                }
+            });
+            return null;
+        });
+        return books.size();
+    }
+
+    public static String key(SortField field) {
+        return Book.class.getName() + ":sort:" + field.getProperty();
+    }
+
+    private static String rebuildKey(SortField field) {
+        return key(field) + ":rebuild";
+    }
+
+    static String member(SortField field, Book book) {
+        String value = switch (field) {
+            case TITLE -> book.getTitle() == null ? MISSING : normalize(book.getTitle());
+            case PRICE -> book.getPrice() == null ? MISSING : String.format("%015d", Math.max(0, Math.round(book.getPrice() * 100)));
+            case PAGE_COUNT -> book.getPageCount() == null ? MISSING : String.format("%012d", Math.max(0, book.getPageCount()));
+        };
+        return value + SEPARATOR + book.getId();
+    }
+
+    private static String normalize(String title) {
+        String normalized = title.trim().toLowerCase(Locale.ROOT).replace(SEPARATOR, "");
+        return normalized.length() > MAX_TITLE_LENGTH ? normalized.substring(0, MAX_TITLE_LENGTH) : normalized;
+    }
+
+    private static String idOf(String member) {
+        return member.substring(member.lastIndexOf(SEPARATOR) + 1);
+    }
+
+    private static String encodeCursor(SortField field, String member) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((field.getProperty() + SEPARATOR + member).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(SortField field, String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        String prefix = field.getProperty() + SEPARATOR;
+        if (!decoded.startsWith(prefix)) {
+            throw new IllegalArgumentException("Cursor was not issued for sort field " + field.getProperty());
+        }
+        return decoded.substring(prefix.length());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
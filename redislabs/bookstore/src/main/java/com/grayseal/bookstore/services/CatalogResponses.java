@@ -0,0 +1,125 @@
+package com.grayseal.bookstore.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grayseal.bookstore.cache.JsonPayload;
+import com.grayseal.bookstore.cache.RefreshPolicy;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.redis.ConcurrentReader;
+import com.grayseal.bookstore.repositories.CategoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the catalog responses served from the cache, as JSON serialized once when the entry is computed.
+ *
+ * <p>The caches named here store {@link JsonPayload}s with the raw byte serializer configured in
+ * {@code BookstoreApplication}, rather than the objects the JSON is made of. They are loaded with
+ * {@code sync = true}, so concurrent misses of a page share a single load. Keys start with the generation of
+ * the cache, which book and category writes bump, so a write invalidates every entry at once.</p>
+ *
+ * <p>The payloads carry the digest of their JSON, computed when the entry is filled, which the responses send as
+ * their {@code ETag}: a client polling with {@code If-None-Match} gets 304 Not Modified until a write changes the
+ * content.</p>
+ */
+@Component
+public class CatalogResponses {
+
+    public static final String BOOKS_CACHE = "booksCache";
+    public static final String CATEGORIES_CACHE = "categoriesCache";
+
+    @Autowired
+    private ConcurrentReader concurrentReader;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RefreshPolicy refreshPolicy;
+
+    @Value("${app.cache.json.compressionThreshold:1024}")
+    private Integer compressionThreshold;
+
+    @Value("${app.cache.http.maxAge:PT10S}")
+    private Duration maxAge;
+
+    /**
+     * Builds a page of books with its page number, total pages and total elements.
+     * The page holds the same books as {@code BookRepository.findAll(Pageable)}, but the books and their
+     * categories are loaded concurrently rather than one after the other.
+     *
+     * @param page the page number
+     * @param size the number of books per page
+     * @return the page as JSON
+     */
+    @Cacheable(value = BOOKS_CACHE, key = "@cacheGenerations.get('booksCache') + ':' + #page + '-' + #size", sync = true)
+    public JsonPayload books(int page, int size) {
+        Pageable paging = PageRequest.of(page, size);
+        // the repository pages over the members of the keyspace set in the order SMEMBERS returns them
+        Set<String> ids = redisTemplate.opsForSet().members(Book.class.getName());
+        List<String> pageIds = ids.stream().skip(paging.getOffset()).limit(size).toList();
+        Page<Book> pagedResult = new PageImpl<>(concurrentReader.findAllById(Book.class, pageIds), paging, ids.size());
+        List<Book> books = pagedResult.hasContent() ? pagedResult.getContent() : Collections.emptyList();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("books", books);
+        response.put("page", pagedResult.getNumber());
+        response.put("pages", pagedResult.getTotalPages());
+        response.put("total", pagedResult.getTotalElements());
+
+        return toJson(response);
+    }
+
+    /**
+     * Builds the list of all categories.
+     *
+     * @return the categories as JSON
+     */
+    @Cacheable(value = CATEGORIES_CACHE, key = "@cacheGenerations.get('categoriesCache')", sync = true)
+    public JsonPayload categories() {
+        return toJson(categoryRepository.findAll());
+    }
+
+    /**
+     * The {@code Cache-Control} of the catalog responses. Clients and proxies may reuse a response for
+     * {@code app.cache.http.maxAge}, at most the {@code app.cache.ttl} of the entry it comes from, and then must
+     * revalidate it with its {@code ETag}. Like the cache, they may serve it stale meanwhile for
+     * {@code app.cache.staleWhileRevalidate}. A book or category write is seen by clients after {@code maxAge} at
+     * the latest.
+     */
+    public CacheControl cacheControl() {
+        Duration clientMaxAge = maxAge.compareTo(refreshPolicy.getTtl()) < 0 ? maxAge : refreshPolicy.getTtl();
+        return CacheControl.maxAge(clientMaxAge)
+                .cachePublic()
+                .staleWhileRevalidate(refreshPolicy.getStaleWhileRevalidate());
+    }
+
+    private JsonPayload toJson(Object value) {
+        try {
+            return JsonPayload.of(objectMapper.writeValueAsBytes(value), compressionThreshold);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+}
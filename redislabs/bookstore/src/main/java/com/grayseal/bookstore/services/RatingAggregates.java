@@ -0,0 +1,272 @@
+package com.grayseal.bookstore.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.BookRating;
+import com.grayseal.bookstore.redis.CompactLayout;
+import com.grayseal.bookstore.redis.EntityWriteHook;
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-book rating aggregates and a top-rated leaderboard.
+ *
+ * <p>For every book with ratings, a hash holds the number of ratings, their sum and a star histogram
+ * ({@code stars:1} to {@code stars:n}). A sorted set ranks the books by a Bayesian average, which pulls books
+ * with few ratings towards {@code app.ratings.prior.mean} so a single five-star rating does not top the board.
+ * Both are updated atomically by a server-side script on every rating write.</p>
+ *
+ * <p>Rating writes run in pipelines, where a missing script cannot be retried, so a single write sends the
+ * aggregate script with {@code EVAL}. A bulk write loads it once with {@code SCRIPT LOAD} at the start of its
+ * pipeline and then calls it by SHA with {@code EVALSHA}, so it neither sends the script for every rating nor
+ * depends on what the Redis script cache held before. The top-rated script reads the aggregate and book hashes of the books it finds on the leaderboard, keys it
+ * cannot declare up front, so it requires a single Redis node rather than a cluster.</p>
+ */
+@Component
+public class RatingAggregates implements EntityWriteHook<BookRating> {
+
+    public static final String LEADERBOARD_KEY = BookRating.class.getName() + ":top";
+    private static final String AGGREGATE_KEY_PREFIX = BookRating.class.getName() + ":book:";
+    private static final String BOOK_KEY_PREFIX = Book.class.getName() + ":";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final RedisScript<Long> AGGREGATE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/rating-aggregate.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TOP_RATED_SCRIPT = RedisScript.of(new ClassPathResource("scripts/top-rated.lua"), List.class);
+
+    @Value("${app.ratingStars}")
+    private Integer ratingStars;
+
+    @Value("${app.ratings.prior.weight:5}")
+    private Double priorWeight;
+
+    @Value("${app.ratings.prior.mean:3}")
+    private Double priorMean;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private CompactLayout compactLayout;
+
+    /**
+     * The aggregates of one book.
+     */
+    @Data
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RatingSummary {
+        private String bookId;
+        private String title;
+        private long count;
+        private double average;
+        private double score;
+        private Map<Integer, Long> stars;
+    }
+
+    @Override
+    public Class<BookRating> getType() {
+        return BookRating.class;
+    }
+
+    @Override
+    public void afterSave(RedisConnection connection, BookRating rating) {
+        update(connection, rating, 1, false);
+    }
+
+    @Override
+    public void afterDelete(RedisConnection connection, BookRating rating) {
+        update(connection, rating, -1, false);
+    }
+
+    @Override
+    public void afterWrites(RedisConnection connection, List<BookRating> previous, List<BookRating> saved) {
+        // loaded ahead of the calls by SHA in the same pipeline, so they find it even after the cache was flushed
+        connection.scriptingCommands().scriptLoad(bytes(AGGREGATE_SCRIPT.getScriptAsString()));
+        previous.forEach(rating -> update(connection, rating, -1, true));
+        saved.forEach(rating -> update(connection, rating, 1, true));
+    }
+
+    /**
+     * Retrieves the best rated books in a single round trip.
+     *
+     * @param limit the number of books to return
+     * @return the books ordered by leaderboard score, without star histograms
+     */
+    public List<RatingSummary> top(int limit) {
+        List<?> entries = redisTemplate.execute(TOP_RATED_SCRIPT, List.of(LEADERBOARD_KEY),
+                String.valueOf(limit), AGGREGATE_KEY_PREFIX, BOOK_KEY_PREFIX, compactLayout.field(Book.class, "title"));
+        List<RatingSummary> top = new ArrayList<>();
+        if (entries == null) {
+            return top;
+        }
+        for (Object entry : entries) {
+            List<?> fields = (List<?>) entry;
+            long count = Long.parseLong(String.valueOf(fields.get(2)));
+            long sum = Long.parseLong(String.valueOf(fields.get(3)));
+            top.add(RatingSummary.builder()
+                    .bookId(String.valueOf(fields.get(0)))
+                    .score(Double.parseDouble(String.valueOf(fields.get(1))))
+                    .count(count)
+                    .average(count == 0 ? 0 : (double) sum / count)
+                    .title(String.valueOf(fields.get(4)))
+                    .build());
+        }
+        return top;
+    }
+
+    /**
+     * Retrieves the aggregates of a book.
+     *
+     * @param bookId the book id
+     * @return the aggregates, with a zero count if the book has no ratings
+     */
+    public RatingSummary summary(String bookId) {
+        Map<Object, Object> aggregate = redisTemplate.opsForHash().entries(AGGREGATE_KEY_PREFIX + bookId);
+        long count = parseLong(aggregate.get("count"));
+        long sum = parseLong(aggregate.get("sum"));
+        Map<Integer, Long> stars = new LinkedHashMap<>();
+        for (int star = 1; star <= ratingStars; star++) {
+            stars.put(star, parseLong(aggregate.get("stars:" + star)));
+        }
+        return RatingSummary.builder()
+                .bookId(bookId)
+                .count(count)
+                .average(count == 0 ? 0 : (double) sum / count)
+                .score(count == 0 ? 0 : score(count, sum))
+                .stars(stars)
+                .build();
+    }
+
+    public long leaderboardSize() {
+        Long size = redisTemplate.opsForZSet().zCard(LEADERBOARD_KEY);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Recomputes all aggregates and the leaderboard from the stored {@code BookRating} hashes. Ratings are
+     * iterated with {@code SSCAN} and read in pipelined batches, so memory use is bounded by the number of
+     * rated books rather than the number of ratings. Ratings written while the rebuild runs may be missed,
+     * so it is meant to run at startup.
+     *
+     * @return the number of ratings aggregated
+     */
+    public long rebuild() {
+        Map<String, long[]> aggregates = new HashMap<>();
+        long ratings = 0;
+        List<String> ids = new ArrayList<>(REBUILD_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().count(REBUILD_BATCH_SIZE).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(BookRating.class.getName(), options)) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next());
+                if (ids.size() == REBUILD_BATCH_SIZE) {
+                    ratings += aggregate(ids, aggregates);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            ratings += aggregate(ids, aggregates);
+        }
+
+        List<String> staleKeys = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(AGGREGATE_KEY_PREFIX + "*").count(REBUILD_BATCH_SIZE).build())) {
+            cursor.forEachRemaining(staleKeys::add);
+        }
+
+        String rebuildKey = LEADERBOARD_KEY + ":rebuild";
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            staleKeys.forEach(key -> connection.keyCommands().del(bytes(key)));
+            connection.keyCommands().del(bytes(rebuildKey));
+            aggregates.forEach((bookId, aggregate) -> {
+                Map<byte[], byte[]> fields = new HashMap<>();
+                fields.put(bytes("count"), bytes(String.valueOf(aggregate[0])));
+                fields.put(bytes("sum"), bytes(String.valueOf(aggregate[1])));
+                for (int star = 1; star <= ratingStars; star++) {
+                    fields.put(bytes("stars:" + star), bytes(String.valueOf(aggregate[star + 1])));
+                }
+                connection.hashCommands().hMSet(bytes(AGGREGATE_KEY_PREFIX + bookId), fields);
+                connection.zSetCommands().zAdd(bytes(rebuildKey), score(aggregate[0], aggregate[1]), bytes(bookId));
+            });
+            return null;
+        });
+        if (aggregates.isEmpty()) {
+            redisTemplate.delete(LEADERBOARD_KEY);
+        } else {
+            redisTemplate.rename(rebuildKey, LEADERBOARD_KEY);
+        }
+        return ratings;
+    }
+
+    private int aggregate(List<String> ratingIds, Map<String, long[]> aggregates) {
+        List<Object> fields = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            ratingIds.forEach(id -> connection.hashCommands().hMGet(bytes(BookRating.class.getName() + ":" + id),
+                    bytes("book"), bytes("rating")));
+            return null;
+        });
+        int aggregated = 0;
+        for (Object result : fields) {
+            List<?> values = (List<?>) result;
+            if (values == null || values.get(0) == null || values.get(1) == null) {
+                continue;
+            }
+            // the book reference is stored as <keyspace>:<id>
+            String bookId = String.valueOf(values.get(0)).substring(BOOK_KEY_PREFIX.length());
+            int stars = Integer.parseInt(String.valueOf(values.get(1)));
+            if (stars < 1 || stars > ratingStars) {
+                continue;
+            }
+            long[] aggregate = aggregates.computeIfAbsent(bookId, id -> new long[ratingStars + 2]);
+            aggregate[0]++;
+            aggregate[1] += stars;
+            aggregate[stars + 1]++;
+            aggregated++;
+        }
+        return aggregated;
+    }
+
+    private void update(RedisConnection connection, BookRating rating, int delta, boolean loaded) {
+        if (rating.getBook() == null || rating.getBook().getId() == null || rating.getRating() == null) {
+            return;
+        }
+        String bookId = rating.getBook().getId();
+        byte[][] keysAndArgs = {bytes(AGGREGATE_KEY_PREFIX + bookId), bytes(LEADERBOARD_KEY),
+                bytes(bookId), bytes(String.valueOf(rating.getRating())), bytes(String.valueOf(delta)),
+                bytes(String.valueOf(priorWeight)), bytes(String.valueOf(priorMean))};
+        if (loaded) {
+            connection.scriptingCommands().evalSha(AGGREGATE_SCRIPT.getSha1(), ReturnType.INTEGER, 2, keysAndArgs);
+        } else {
+            connection.scriptingCommands().eval(bytes(AGGREGATE_SCRIPT.getScriptAsString()), ReturnType.INTEGER, 2, keysAndArgs);
+        }
+    }
+
+    private double score(long count, long sum) {
+        return (priorWeight * priorMean + sum) / (priorWeight + count);
+    }
+
+    private static long parseLong(Object value) {
+        return value == null ? 0 : Long.parseLong(String.valueOf(value));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
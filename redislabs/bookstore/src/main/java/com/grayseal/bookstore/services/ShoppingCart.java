@@ -0,0 +1,235 @@
+package com.grayseal.bookstore.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.CompactLayout;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Shopping carts and checkout, each operation a single Lua script run atomically by Redis.
+ *
+ * <p>A cart is a hash of book ids to quantities under {@code <User keyspace>:cart:<user id>}, kept for
+ * {@code app.cart.ttl} after the last addition. Checkout reads the current price of every book, checks the stock
+ * in the {@code <Book keyspace>:stock} hash, and only if every book is available takes the copies from the stock,
+ * records the order and empties the cart, all in one round trip. No client-side {@code WATCH} and retry loop is
+ * needed, so checkout latency does not grow with contention on popular books. Books not in the stock hash yet
+ * start with {@code app.cart.defaultStock} copies, until an administrator sets their stock.</p>
+ *
+ * <p>The scripts are loaded into the Redis script cache at startup and then run by SHA with {@code EVALSHA}, so
+ * their source is not sent with every call. Should the cache be flushed, for instance by a Redis restart, the
+ * first call of each script falls back to {@code EVAL}, which caches it again.</p>
+ */
+@Component
+@Slf4j
+public class ShoppingCart {
+
+    private static final String CART_KEY_PREFIX = User.class.getName() + ":cart:";
+    private static final String ORDERS_KEY_PREFIX = User.class.getName() + ":orders:";
+    private static final String ORDER_KEY_PREFIX = User.class.getName() + ":order:";
+    private static final String STOCK_KEY = Book.class.getName() + ":stock";
+    private static final String BOOK_KEY_PREFIX = Book.class.getName() + ":";
+
+    private static final RedisScript<Long> ADD_SCRIPT = RedisScript.of(new ClassPathResource("scripts/cart-add.lua"), Long.class);
+    private static final RedisScript<Long> REMOVE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/cart-remove.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LIST_SCRIPT = RedisScript.of(new ClassPathResource("scripts/cart-list.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CHECKOUT_SCRIPT = RedisScript.of(new ClassPathResource("scripts/checkout.lua"), List.class);
+
+    @Value("${app.cart.ttl:P7D}")
+    private Duration ttl;
+
+    @Value("${app.cart.maxQuantity:100}")
+    private Integer maxQuantity;
+
+    @Value("${app.cart.defaultStock:20}")
+    private Integer defaultStock;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private CompactLayout compactLayout;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * A book in a cart, with its current title and price; those are empty if the book was deleted since.
+     */
+    public record CartItem(String bookId, long quantity, String title, BigDecimal price, String currency) {
+    }
+
+    /**
+     * @param total the sum of the current prices, {@code null} if a book has no price or the currencies differ
+     */
+    public record Cart(List<CartItem> items, BigDecimal total, String currency) {
+    }
+
+    public record OrderLine(String bookId, String title, long quantity, BigDecimal price) {
+    }
+
+    public record Order(String id, String userId, long createdAt, String currency, BigDecimal total, List<OrderLine> lines) {
+    }
+
+    /**
+     * The outcome of a checkout.
+     *
+     * @param status  {@code OK}, {@code EMPTY}, {@code UNAVAILABLE}, {@code OUT_OF_STOCK}, {@code MIXED_CURRENCY}
+     *                or {@code PRICE_CHANGED}
+     * @param order   the order, when the checkout succeeded
+     * @param bookIds the books unavailable or out of stock
+     * @param total   the current total, when it is not the expected one
+     */
+    public record Checkout(String status, Order order, List<String> bookIds, BigDecimal total) {
+
+        public boolean succeeded() {
+            return "OK".equals(status);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        List<RedisScript<?>> scripts = List.of(ADD_SCRIPT, REMOVE_SCRIPT, LIST_SCRIPT, CHECKOUT_SCRIPT);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            for (RedisScript<?> script : scripts) {
+                String sha = connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                if (!script.getSha1().equals(sha)) {
+                    throw new IllegalStateException("Redis cached a cart script as " + sha + " instead of " + script.getSha1());
+                }
+            }
+            return null;
+        });
+        log.info(">>>> Loaded " + scripts.size() + " cart scripts into the Redis script cache");
+    }
+
+    /**
+     * Adds copies of a book to the cart of a user, up to {@code app.cart.maxQuantity}.
+     *
+     * @return the quantity of the book in the cart, or -1 if there is no such book
+     */
+    public long add(String userId, String bookId, long quantity) {
+        return redisTemplate.execute(ADD_SCRIPT, List.of(CART_KEY_PREFIX + userId), bookId, String.valueOf(quantity),
+                BOOK_KEY_PREFIX, String.valueOf(maxQuantity), String.valueOf(ttl.toMillis()));
+    }
+
+    /**
+     * Removes copies of a book from the cart of a user.
+     *
+     * @param quantity the number of copies to remove, or {@code null} for all
+     * @return the quantity left
+     */
+    public long remove(String userId, String bookId, Long quantity) {
+        return redisTemplate.execute(REMOVE_SCRIPT, List.of(CART_KEY_PREFIX + userId), bookId,
+                String.valueOf(quantity == null ? 0 : quantity));
+    }
+
+    public Cart get(String userId) {
+        List<?> entries = redisTemplate.execute(LIST_SCRIPT, List.of(CART_KEY_PREFIX + userId), BOOK_KEY_PREFIX,
+                compactLayout.field(Book.class, "title"), compactLayout.field(Book.class, "price"),
+                compactLayout.field(Book.class, "currency"));
+        List<CartItem> items = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            List<?> fields = (List<?>) entry;
+            String price = (String) fields.get(3);
+            items.add(new CartItem((String) fields.get(0), Long.parseLong((String) fields.get(1)), (String) fields.get(2),
+                    price.isEmpty() ? null : new BigDecimal(price), (String) fields.get(4)));
+        }
+
+        long currencies = items.stream().map(CartItem::currency).distinct().count();
+        boolean priced = items.stream().allMatch(item -> item.price() != null);
+        BigDecimal total = priced && currencies <= 1
+                ? items.stream().map(item -> item.price().multiply(BigDecimal.valueOf(item.quantity()))).reduce(BigDecimal.ZERO, BigDecimal::add)
+                : null;
+        return new Cart(items, total, currencies == 1 ? items.get(0).currency() : null);
+    }
+
+    /**
+     * Orders the books of the cart of a user at their current prices.
+     *
+     * @param expectedTotal the total the user agreed to pay, as shown with the cart; the checkout fails with
+     *                      {@code PRICE_CHANGED} if prices changed since. {@code null} accepts the current total
+     */
+    public Checkout checkout(String userId, BigDecimal expectedTotal) {
+        String orderId = UUID.randomUUID().toString();
+        String expectedCents = expectedTotal == null ? "" : expectedTotal.movePointRight(2).setScale(0, RoundingMode.HALF_UP).toPlainString();
+        List<?> result = redisTemplate.execute(CHECKOUT_SCRIPT,
+                List.of(CART_KEY_PREFIX + userId, STOCK_KEY, ORDER_KEY_PREFIX + orderId, ORDERS_KEY_PREFIX + userId),
+                BOOK_KEY_PREFIX, compactLayout.field(Book.class, "title"), compactLayout.field(Book.class, "price"),
+                compactLayout.field(Book.class, "currency"), String.valueOf(defaultStock), expectedCents, orderId, userId,
+                String.valueOf(System.currentTimeMillis()));
+
+        String status = (String) result.get(0);
+        List<String> rest = result.subList(1, result.size()).stream().map(String.class::cast).toList();
+        return switch (status) {
+            case "OK" -> {
+                Order order = read(rest.get(0));
+                log.info(">>>> Order " + order.id() + " of " + order.lines().size() + " books checked out by " + userId);
+                yield new Checkout(status, order, List.of(), order.total());
+            }
+            case "PRICE_CHANGED" -> new Checkout(status, null, List.of(), new BigDecimal(rest.get(0)).movePointLeft(2));
+            default -> new Checkout(status, null, rest, null);
+        };
+    }
+
+    /**
+     * @return the most recent orders of a user, newest first
+     */
+    public List<Order> orders(String userId, int limit) {
+        List<String> ids = redisTemplate.opsForList().range(ORDERS_KEY_PREFIX + userId, 0, limit - 1);
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        List<String> orders = redisTemplate.opsForValue().multiGet(ids.stream().map(id -> ORDER_KEY_PREFIX + id).toList());
+        return orders.stream().filter(Objects::nonNull).map(this::read).toList();
+    }
+
+    /**
+     * @return the copies of a book left in stock
+     */
+    public long stock(String bookId) {
+        Object stock = redisTemplate.opsForHash().get(STOCK_KEY, bookId);
+        return stock == null ? defaultStock : Long.parseLong((String) stock);
+    }
+
+    /**
+     * Sets the copies of a book in stock, replacing the default stock of books never stocked.
+     *
+     * @return false if there is no such book
+     */
+    public boolean setStock(String bookId, long stock) {
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(BOOK_KEY_PREFIX + bookId))) {
+            return false;
+        }
+        redisTemplate.opsForHash().put(STOCK_KEY, bookId, String.valueOf(stock));
+        log.info(">>>> Stock of book " + bookId + " set to " + stock);
+        return true;
+    }
+
+    private Order read(String json) {
+        try {
+            return objectMapper.readValue(json, Order.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt order: " + e.getMessage(), e);
+        }
+    }
+}
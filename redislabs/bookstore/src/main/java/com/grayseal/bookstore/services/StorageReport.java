@@ -0,0 +1,249 @@
+package com.grayseal.bookstore.services;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.BatchReader;
+import com.grayseal.bookstore.redis.BulkWriteStats;
+import com.grayseal.bookstore.redis.BulkWriter;
+import com.grayseal.bookstore.redis.CompactLayout;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Measures with {@code MEMORY USAGE} how much memory the entity hashes take in Redis, as stored and in both the
+ * default and the {@link CompactLayout}, and rewrites them in the configured layout.
+ *
+ * <p>A report samples up to {@code app.storage.report.sample} entities per type. Each one is written in both
+ * layouts to temporary keys, which are measured by a script and deleted again, so the figures include the
+ * Redis overhead of the key and of the hash encoding. Hashes stay in the compact listpack encoding only while
+ * they have at most {@code hash-max-listpack-entries} fields, none longer than {@code hash-max-listpack-value}
+ * bytes; the report counts the sampled hashes of each layout that fit.</p>
+ */
+@Component
+@Slf4j
+public class StorageReport {
+
+    private static final List<Class<?>> TYPES = List.of(Book.class, User.class);
+    private static final int REWRITE_BATCH_SIZE = 500;
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MEMORY_USAGE_SCRIPT = RedisScript.of(new ClassPathResource("scripts/memory-usage.lua"), List.class);
+
+    @Value("${app.storage.compact.enabled:false}")
+    private Boolean compactWrites;
+
+    @Value("${app.storage.compact.packing:false}")
+    private Boolean packing;
+
+    @Value("${app.storage.report.sample:200}")
+    private Integer defaultSample;
+
+    @Autowired
+    private RedisKeyValueAdapter redisKeyValueAdapter;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private CompactLayout compactLayout;
+
+    @Autowired
+    private BatchReader batchReader;
+
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    private MappingRedisConverter defaultConverter;
+
+    /**
+     * The memory taken by the hashes of an entity type. Sizes are averages over the sampled entities, in bytes;
+     * totals are projected to all entities of the type.
+     *
+     * @param idSetBytes the size of the set of the ids of the type, which the repositories keep in both layouts
+     */
+    public record TypeReport(String type, long entities, int sampled, long storedBytes, long defaultBytes,
+                             long compactBytes, int defaultListpacks, int compactListpacks, long projectedDefaultBytes,
+                             long projectedCompactBytes, double saving, long idSetBytes) {
+    }
+
+    /**
+     * @param hashMaxListpackEntries the listpack (ziplist before Redis 7) limits of the server, {@code null} when
+     *                               {@code CONFIG} is not allowed
+     */
+    public record Report(boolean compactWrites, boolean packing, String hashMaxListpackEntries,
+                         String hashMaxListpackValue, List<TypeReport> types) {
+    }
+
+    @PostConstruct
+    void start() {
+        RedisMappingContext mappingContext = redisKeyValueAdapter.getConverter().getMappingContext();
+        defaultConverter = new MappingRedisConverter(mappingContext);
+        defaultConverter.afterPropertiesSet();
+    }
+
+    /**
+     * Measures every entity type with a compact layout.
+     *
+     * @param sample the number of entities to sample per type, or {@code null} for {@code app.storage.report.sample}
+     */
+    public Report report(Integer sample) {
+        int size = sample == null ? defaultSample : sample;
+        Properties config = config();
+        List<TypeReport> types = TYPES.stream().map(type -> report(type, size)).toList();
+        return new Report(compactWrites, packing,
+                config == null ? null : config.getProperty("hash-max-listpack-entries", config.getProperty("hash-max-ziplist-entries")),
+                config == null ? null : config.getProperty("hash-max-listpack-value", config.getProperty("hash-max-ziplist-value")), types);
+    }
+
+    /**
+     * Saves every entity of a type again, in the layout set by {@code app.storage.compact.enabled}. Entities are
+     * iterated with {@code SSCAN} and rewritten in batches through the {@link BulkWriter}, whose hooks see the
+     * unchanged entities deleted, then saved.
+     *
+     * @return the number of entities rewritten
+     */
+    public long rewrite(String typeName) {
+        Class<?> type = type(typeName);
+        String keyspace = keyspace(type);
+        BulkWriteStats stats = new BulkWriteStats();
+        List<String> ids = new ArrayList<>(REWRITE_BATCH_SIZE);
+        Map<String, Object> resolvedReferences = new HashMap<>();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(keyspace, ScanOptions.scanOptions().count(REWRITE_BATCH_SIZE).build())) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next());
+                if (ids.size() == REWRITE_BATCH_SIZE) {
+                    rewrite(type, ids, resolvedReferences, stats);
+                    ids.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            rewrite(type, ids, resolvedReferences, stats);
+        }
+        log.info(">>>> Rewrote " + stats.getEntities() + " " + type.getSimpleName() + "s in the "
+                + (compactWrites ? "compact" : "default") + " layout: " + stats);
+        return stats.getEntities();
+    }
+
+    private <T> void rewrite(Class<T> type, List<String> ids, Map<String, Object> resolvedReferences, BulkWriteStats stats) {
+        List<T> entities = batchReader.findAllById(type, ids, resolvedReferences);
+        bulkWriter.write(entities, entities, stats);
+    }
+
+    private TypeReport report(Class<?> type, int sample) {
+        String keyspace = keyspace(type);
+        Long entities = redisTemplate.opsForSet().size(keyspace);
+        List<String> ids = sample > 0 ? redisTemplate.opsForSet().distinctRandomMembers(keyspace, sample).stream().toList() : List.of();
+        List<?> found = batchReader.findAllById(type, ids);
+
+        String prefix = keyspace + ":storage-report:" + UUID.randomUUID() + ":";
+        List<String> temporaryKeys = new ArrayList<>();
+        List<String> measuredKeys = new ArrayList<>();
+        List<?> results;
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < found.size(); i++) {
+                    RedisData verbose = new RedisData();
+                    defaultConverter.write(found.get(i), verbose);
+                    RedisData compact = new RedisData(Bucket.newBucketFromRawMap(verbose.getBucket().rawMap()));
+                    compact.setId(verbose.getId());
+                    compactLayout.compact(type, compact);
+
+                    String defaultKey = prefix + i + ":default";
+                    String compactKey = prefix + i + ":compact";
+                    connection.hashCommands().hMSet(bytes(defaultKey), verbose.getBucket().rawMap());
+                    connection.hashCommands().hMSet(bytes(compactKey), compact.getBucket().rawMap());
+                    temporaryKeys.add(defaultKey);
+                    temporaryKeys.add(compactKey);
+                    measuredKeys.addAll(List.of(keyspace + ":" + verbose.getId(), defaultKey, compactKey));
+                }
+                return null;
+            });
+            measuredKeys.add(keyspace);
+            results = redisTemplate.execute(MEMORY_USAGE_SCRIPT, measuredKeys);
+        } finally {
+            if (!temporaryKeys.isEmpty()) {
+                redisTemplate.delete(temporaryKeys);
+            }
+        }
+
+        long stored = 0;
+        long verbose = 0;
+        long compact = 0;
+        int defaultListpacks = 0;
+        int compactListpacks = 0;
+        for (int i = 0; i < found.size(); i++) {
+            // the stored, default and compact hashes of each entity; the temporary keys are longer than the
+            // entity key, which MEMORY USAGE counts
+            String key = measuredKeys.get(3 * i);
+            stored += bytes(results.get(3 * i));
+            verbose += bytes(results.get(3 * i + 1)) - (measuredKeys.get(3 * i + 1).length() - key.length());
+            compact += bytes(results.get(3 * i + 2)) - (measuredKeys.get(3 * i + 2).length() - key.length());
+            defaultListpacks += listpack(results.get(3 * i + 1)) ? 1 : 0;
+            compactListpacks += listpack(results.get(3 * i + 2)) ? 1 : 0;
+        }
+        long idSetBytes = bytes(results.get(results.size() - 1));
+
+        int sampled = found.size();
+        long total = entities == null ? 0 : entities;
+        long averageDefault = sampled == 0 ? 0 : verbose / sampled;
+        long averageCompact = sampled == 0 ? 0 : compact / sampled;
+        return new TypeReport(type.getSimpleName(), total, sampled, sampled == 0 ? 0 : stored / sampled,
+                averageDefault, averageCompact, defaultListpacks, compactListpacks, averageDefault * total,
+                averageCompact * total, verbose == 0 ? 0 : 1 - (double) compact / verbose, idSetBytes);
+    }
+
+    private Properties config() {
+        try {
+            return redisTemplate.execute((RedisCallback<Properties>) connection -> connection.serverCommands().getConfig("hash-max-*"));
+        } catch (RuntimeException e) {
+            log.info(">>>> Listpack limits not readable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Class<?> type(String typeName) {
+        return TYPES.stream().filter(type -> type.getSimpleName().equalsIgnoreCase(typeName)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No entity type with a compact layout named " + typeName));
+    }
+
+    private String keyspace(Class<?> type) {
+        return redisKeyValueAdapter.getConverter().getMappingContext().getRequiredPersistentEntity(type).getKeySpace();
+    }
+
+    private static long bytes(Object measure) {
+        return ((Number) ((List<?>) measure).get(0)).longValue();
+    }
+
+    // ziplist before Redis 7
+    private static boolean listpack(Object measure) {
+        Object encoding = ((List<?>) measure).get(1);
+        return "listpack".equals(encoding) || "ziplist".equals(encoding);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,159 @@
+package com.grayseal.bookstore.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grayseal.bookstore.models.User;
+import com.grayseal.bookstore.redis.BatchReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes users to a JSON stream chunk by chunk, so memory use depends on the chunk size and not on the number
+ * of users.
+ *
+ * <p>The {@code User} id set is iterated with {@code SSCAN}. Each chunk of ids is loaded with the
+ * {@link BatchReader} in pipelined round trips, written and flushed before the next chunk is scanned. Roles are
+ * resolved once per listing and shared by all chunks.</p>
+ *
+ * <p>A listing can stop after a number of users and be resumed from a cursor, made of the {@code SSCAN}
+ * cursor of the current chunk and the number of users of that chunk already written. As with {@code SSCAN}
+ * itself, a user may be listed twice, or a user added meanwhile may be skipped, if the set changes between
+ * requests.</p>
+ */
+@Component
+public class UserListing {
+
+    private static final String FIRST = "0";
+    // issues a single SSCAN, so the cursor that produced every chunk is known and a page can resume from it
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCAN_CHUNK_SCRIPT = RedisScript.of(new ClassPathResource("scripts/scan-chunk.lua"), List.class);
+
+    @Value("${app.users.chunkSize:500}")
+    private Integer chunkSize;
+
+    @Autowired
+    private BatchReader batchReader;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Where a listing resumes: the {@code SSCAN} cursor of a chunk and the number of its users to skip.
+     */
+    public record Position(String scanCursor, int offset) {
+
+        public static final Position START = new Position(FIRST, 0);
+
+        /**
+         * Parses a cursor returned with a previous page.
+         *
+         * @throws IllegalArgumentException if the cursor is malformed
+         */
+        public static Position parse(String cursor) {
+            String[] parts = cursor.split(":");
+            try {
+                if (parts.length == 2) {
+                    Long.parseUnsignedLong(parts[0]);
+                    int offset = Integer.parseInt(parts[1]);
+                    if (offset >= 0) {
+                        return new Position(parts[0], offset);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // rejected below
+            }
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        @Override
+        public String toString() {
+            return scanCursor + ":" + offset;
+        }
+    }
+
+    /**
+     * Writes every user as a JSON array.
+     *
+     * @param out the stream to write to
+     */
+    public void writeAll(OutputStream out) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartArray();
+            write(json, Position.START, Long.MAX_VALUE);
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes a page of users as a JSON object holding the {@code users} and the {@code next} cursor, which is
+     * {@code null} on the last page.
+     *
+     * @param out   the stream to write to
+     * @param from  where to start
+     * @param limit the maximum number of users to write
+     */
+    public void writePage(OutputStream out, Position from, int limit) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("users");
+            Position next = write(json, from, limit);
+            json.writeEndArray();
+            json.writeStringField("next", next == null ? null : next.toString());
+            json.writeEndObject();
+        }
+    }
+
+    private Position write(JsonGenerator json, Position from, long limit) throws IOException {
+        Map<String, Object> roles = new HashMap<>();
+        String scanCursor = from.scanCursor();
+        int skip = from.offset();
+        long written = 0;
+        do {
+            Chunk chunk = scan(scanCursor);
+            List<String> ids = chunk.ids().subList(Math.min(skip, chunk.ids().size()), chunk.ids().size());
+            Position next = null;
+            if (ids.size() > limit - written) {
+                ids = ids.subList(0, (int) (limit - written));
+                next = new Position(scanCursor, skip + ids.size());
+            }
+            for (User user : batchReader.findAllById(User.class, ids, roles)) {
+                json.writeObject(user);
+            }
+            json.flush();
+            written += ids.size();
+
+            if (next != null) {
+                return next;
+            }
+            scanCursor = chunk.next();
+            skip = 0;
+            if (written == limit) {
+                return FIRST.equals(scanCursor) ? null : new Position(scanCursor, 0);
+            }
+        } while (!FIRST.equals(scanCursor));
+        return null;
+    }
+
+    private record Chunk(String next, List<String> ids) {
+    }
+
+    private Chunk scan(String scanCursor) {
+        List<?> reply = redisTemplate.execute(SCAN_CHUNK_SCRIPT, List.of(User.class.getName()), scanCursor, String.valueOf(chunkSize));
+        List<String> ids = ((List<?>) reply.get(1)).stream().map(String::valueOf).toList();
+        return new Chunk(String.valueOf(reply.get(0)), ids);
+    }
+
+}
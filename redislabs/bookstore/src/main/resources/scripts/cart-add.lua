@@ -0,0 +1,16 @@
+-- Adds copies of a book to a cart, if the book exists, and keeps the cart for another TTL.
+-- KEYS[1]: the cart hash, book id to quantity
+-- ARGV[1]: book id, ARGV[2]: quantity to add, ARGV[3]: book hash key prefix, ARGV[4]: maximum quantity per book,
+-- ARGV[5]: cart TTL in milliseconds
+-- Returns the new quantity of the book, or -1 if there is no such book.
+if redis.call('EXISTS', ARGV[3] .. ARGV[1]) == 0 then
+    return -1
+end
+local quantity = redis.call('HINCRBY', KEYS[1], ARGV[1], tonumber(ARGV[2]))
+local maximum = tonumber(ARGV[4])
+if quantity > maximum then
+    redis.call('HSET', KEYS[1], ARGV[1], maximum)
+    quantity = maximum
+end
+redis.call('PEXPIRE', KEYS[1], tonumber(ARGV[5]))
+return quantity
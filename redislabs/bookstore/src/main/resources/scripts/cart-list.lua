@@ -0,0 +1,12 @@
+-- Returns the books of a cart with their current title, price and currency in a single round trip.
+-- KEYS[1]: the cart hash, book id to quantity
+-- ARGV[1]: book hash key prefix, ARGV[2..4]: title, price and currency fields of the compact book layout (books
+-- may be stored in either layout)
+-- Returns {id, quantity, title, price, currency} per book; fields of deleted books are empty.
+local cart = redis.call('HGETALL', KEYS[1])
+local result = {}
+for i = 1, #cart, 2 do
+    local book = redis.call('HMGET', ARGV[1] .. cart[i], 'title', ARGV[2], 'price', ARGV[3], 'currency', ARGV[4])
+    result[#result + 1] = {cart[i], cart[i + 1], book[1] or book[2] or '', book[3] or book[4] or '', book[5] or book[6] or ''}
+end
+return result
@@ -0,0 +1,11 @@
+-- Removes copies of a book from a cart, and the book once none are left.
+-- KEYS[1]: the cart hash, book id to quantity
+-- ARGV[1]: book id, ARGV[2]: quantity to remove, 0 for all
+-- Returns the quantity left.
+local quantity = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')
+local removed = tonumber(ARGV[2])
+if removed == 0 or removed >= quantity then
+    redis.call('HDEL', KEYS[1], ARGV[1])
+    return 0
+end
+return redis.call('HINCRBY', KEYS[1], ARGV[1], -removed)
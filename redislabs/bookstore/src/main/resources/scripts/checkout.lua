@@ -0,0 +1,72 @@
+-- Checks out a cart atomically: validates the books and their prices, takes them from the stock, records the
+-- order and empties the cart. Nothing is written unless every check passes.
+-- KEYS[1]: the cart hash, book id to quantity, KEYS[2]: the stock hash, book id to copies left,
+-- KEYS[3]: the order key, KEYS[4]: the order list of the user
+-- ARGV[1]: book hash key prefix, ARGV[2..4]: title, price and currency fields of the compact book layout,
+-- ARGV[5]: stock of a book not in the stock hash yet, ARGV[6]: the total the user expects to pay in cents, empty
+-- to accept any, ARGV[7]: order id, ARGV[8]: user id, ARGV[9]: current time in milliseconds
+-- Returns {'OK', order JSON}, {'EMPTY'}, {'UNAVAILABLE', book ids...} for deleted or unpriced books,
+-- {'OUT_OF_STOCK', book ids...}, {'MIXED_CURRENCY'} or {'PRICE_CHANGED', total in cents}.
+local cart = redis.call('HGETALL', KEYS[1])
+if #cart == 0 then
+    return {'EMPTY'}
+end
+
+local function decimal(cents)
+    return string.format('%d.%02d', math.floor(cents / 100), cents % 100)
+end
+
+local lines = {}
+local stocks = {}
+local unavailable = {}
+local outOfStock = {}
+local currency = nil
+local mixed = false
+local total = 0
+for i = 1, #cart, 2 do
+    local id = cart[i]
+    local quantity = tonumber(cart[i + 1])
+    local book = redis.call('HMGET', ARGV[1] .. id, 'title', ARGV[2], 'price', ARGV[3], 'currency', ARGV[4])
+    local price = tonumber(book[3] or book[4] or '')
+    if price == nil then
+        unavailable[#unavailable + 1] = id
+    else
+        local bookCurrency = book[5] or book[6] or ''
+        if currency == nil then
+            currency = bookCurrency
+        elseif currency ~= bookCurrency then
+            mixed = true
+        end
+        local stock = tonumber(redis.call('HGET', KEYS[2], id) or ARGV[5])
+        if stock < quantity then
+            outOfStock[#outOfStock + 1] = id
+        end
+        local cents = math.floor(price * 100 + 0.5)
+        total = total + cents * quantity
+        stocks[id] = stock - quantity
+        lines[#lines + 1] = {bookId = id, title = book[1] or book[2] or '', quantity = quantity, price = decimal(cents)}
+    end
+end
+
+if #unavailable > 0 then
+    return {'UNAVAILABLE', unpack(unavailable)}
+end
+if #outOfStock > 0 then
+    return {'OUT_OF_STOCK', unpack(outOfStock)}
+end
+if mixed then
+    return {'MIXED_CURRENCY'}
+end
+if ARGV[6] ~= '' and tonumber(ARGV[6]) ~= total then
+    return {'PRICE_CHANGED', tostring(total)}
+end
+
+for id, stock in pairs(stocks) do
+    redis.call('HSET', KEYS[2], id, stock)
+end
+local order = cjson.encode({id = ARGV[7], userId = ARGV[8], createdAt = tonumber(ARGV[9]), currency = currency,
+                            total = decimal(total), lines = lines})
+redis.call('SET', KEYS[3], order)
+redis.call('LPUSH', KEYS[4], ARGV[7])
+redis.call('DEL', KEYS[1])
+return {'OK', order}
@@ -0,0 +1,39 @@
+-- Adds a high rating to, or removes it from, the books liked by a user, and updates the co-rating counts of the
+-- book with every other book the user likes, in both directions. A user may rate a book more than once, so
+-- the liked hash counts the ratings per book and the co-rating counts change only when it goes from 0 to 1 or
+-- back.
+-- KEYS[1]: the liked hash of the user, KEYS[2]: the set of users liking at least one book,
+-- KEYS[3]: the sorted set of books similar to the rated book
+-- ARGV[1]: user id, ARGV[2]: book id, ARGV[3]: 1 to add the rating, -1 to remove it,
+-- ARGV[4]: key prefix of the per-book sorted sets of similar books
+-- Returns the number of co-rating counts updated.
+-- The sorted sets of the other books liked by the user are keyed by ids read from the liked hash, so they cannot be
+-- passed in KEYS: the script only runs on a single Redis node, not on a cluster.
+local book = ARGV[2]
+local delta = tonumber(ARGV[3])
+local count = redis.call('HINCRBY', KEYS[1], book, delta)
+if count <= 0 then
+    redis.call('HDEL', KEYS[1], book)
+end
+if (delta > 0 and count ~= 1) or (delta < 0 and count ~= 0) then
+    return 0
+end
+local updated = 0
+local others = redis.call('HKEYS', KEYS[1])
+for _, other in ipairs(others) do
+    if other ~= book then
+        if tonumber(redis.call('ZINCRBY', KEYS[3], delta, other)) <= 0 then
+            redis.call('ZREM', KEYS[3], other)
+        end
+        if tonumber(redis.call('ZINCRBY', ARGV[4] .. other, delta, book)) <= 0 then
+            redis.call('ZREM', ARGV[4] .. other, book)
+        end
+        updated = updated + 1
+    end
+end
+if #others == 0 then
+    redis.call('SREM', KEYS[2], ARGV[1])
+else
+    redis.call('SADD', KEYS[2], ARGV[1])
+end
+return updated
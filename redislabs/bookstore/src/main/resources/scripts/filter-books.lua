@@ -0,0 +1,34 @@
+-- Evaluates a book filter and returns a page of the matching ids. The values of a criterion are united with
+-- SUNIONSTORE, the criteria intersected with ZINTERSTORE into a sorted set (all scores equal, so ids sort
+-- lexicographically and a page is a range by rank), which is kept for a short time so the next pages, and
+-- the same filter from other clients, are read from it without evaluating it again.
+-- KEYS[1]: the result
+-- KEYS[2..]: per criterion, its index set when it has a single value, otherwise a temporary key for the union
+--            followed by the index sets of its values
+-- ARGV[1]: time to keep the result in milliseconds, ARGV[2]: first rank, ARGV[3]: last rank,
+-- ARGV[4..]: the number of values of each criterion
+-- Returns {number of matching books, ids of the page}.
+local result = KEYS[1]
+if redis.call('EXISTS', result) == 0 then
+    local criteria = {}
+    local temporary = {}
+    local k = 2
+    for i = 4, #ARGV do
+        local values = tonumber(ARGV[i])
+        if values == 1 then
+            criteria[#criteria + 1] = KEYS[k]
+            k = k + 1
+        else
+            redis.call('SUNIONSTORE', KEYS[k], unpack(KEYS, k + 1, k + values))
+            criteria[#criteria + 1] = KEYS[k]
+            temporary[#temporary + 1] = KEYS[k]
+            k = k + values + 1
+        end
+    end
+    redis.call('ZINTERSTORE', result, #criteria, unpack(criteria))
+    if #temporary > 0 then
+        redis.call('DEL', unpack(temporary))
+    end
+    redis.call('PEXPIRE', result, ARGV[1])
+end
+return {redis.call('ZCARD', result), redis.call('ZRANGE', result, ARGV[2], ARGV[3])}
@@ -0,0 +1,14 @@
+-- Measures keys in a single round trip.
+-- KEYS: the keys to measure
+-- Returns {bytes, encoding} per key, from MEMORY USAGE with all nested values sampled and OBJECT ENCODING;
+-- {0, 'none'} for a missing key.
+local result = {}
+for i = 1, #KEYS do
+    local bytes = redis.call('MEMORY', 'USAGE', KEYS[i], 'SAMPLES', '0')
+    if bytes then
+        result[i] = {bytes, redis.call('OBJECT', 'ENCODING', KEYS[i])}
+    else
+        result[i] = {0, 'none'}
+    end
+end
+return result
@@ -0,0 +1,17 @@
+-- Adds a rating to, or removes it from, the aggregates of a book and updates the book's leaderboard score.
+-- KEYS[1]: the aggregate hash of the book, KEYS[2]: the leaderboard
+-- ARGV[1]: book id, ARGV[2]: stars, ARGV[3]: 1 to add the rating, -1 to remove it
+-- ARGV[4]: prior weight, ARGV[5]: prior mean of the Bayesian average used as leaderboard score
+local delta = tonumber(ARGV[3])
+local stars = tonumber(ARGV[2])
+local count = redis.call('HINCRBY', KEYS[1], 'count', delta)
+local sum = redis.call('HINCRBY', KEYS[1], 'sum', stars * delta)
+redis.call('HINCRBY', KEYS[1], 'stars:' .. stars, delta)
+if count > 0 then
+    local weight = tonumber(ARGV[4])
+    redis.call('ZADD', KEYS[2], (weight * tonumber(ARGV[5]) + sum) / (weight + count), ARGV[1])
+else
+    redis.call('DEL', KEYS[1])
+    redis.call('ZREM', KEYS[2], ARGV[1])
+end
+return count
@@ -0,0 +1,5 @@
+-- A single SSCAN call, so the caller knows the cursor that produced each chunk and can resume from it.
+-- KEYS[1]: the set
+-- ARGV[1]: the cursor, ARGV[2]: the COUNT hint
+-- Returns {next cursor, members}.
+return redis.call('SSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])
@@ -0,0 +1,16 @@
+-- Returns the top rated books with their aggregates and titles in a single round trip.
+-- KEYS[1]: the leaderboard
+-- ARGV[1]: number of books, ARGV[2]: aggregate hash key prefix, ARGV[3]: book hash key prefix,
+-- ARGV[4]: title field of the compact book layout (books may be stored in either layout)
+-- Returns {id, score, count, sum, title} per book.
+-- The aggregate and book hashes are keyed by the ids read from the leaderboard, so they cannot be passed in KEYS:
+-- the script only runs on a single Redis node, not on a cluster.
+local entries = redis.call('ZREVRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1, 'WITHSCORES')
+local result = {}
+for i = 1, #entries, 2 do
+    local id = entries[i]
+    local aggregate = redis.call('HMGET', ARGV[2] .. id, 'count', 'sum')
+    local title = redis.call('HMGET', ARGV[3] .. id, 'title', ARGV[4])
+    result[#result + 1] = {id, entries[i + 1], aggregate[1] or '0', aggregate[2] or '0', title[1] or title[2] or ''}
+end
+return result
@@ -0,0 +1,8 @@
+-- Releases a lock only if the caller still holds it, so a lock that expired and was taken by another owner is kept.
+-- KEYS[1]: the lock
+-- ARGV[1]: the token the caller locked with
+-- Returns 1 if the lock was released, 0 otherwise.
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,132 @@
+package com.grayseal.bookstore.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTests {
+
+    @Test
+    void createSizesBitsAndHashFunctions() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        // ceil(-1000 * ln(0.01) / ln(2)^2) = 9586, rounded up to a multiple of 64
+        assertThat(filter.bits()).isEqualTo(9600);
+        assertThat(filter.hashFunctions()).isEqualTo(7);
+        assertThat(filter.toBytes()).hasSize(1200);
+
+        BloomFilter tiny = BloomFilter.create(1, 0.5);
+        assertThat(tiny.bits()).isEqualTo(64);
+        assertThat(tiny.hashFunctions()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void createRejectsInvalidSizes() {
+        assertThatThrownBy(() -> BloomFilter.create(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BloomFilter.create(-5, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BloomFilter.create(1000, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BloomFilter.create(1000, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BloomFilter.create(1000, -0.1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void addedValuesAreNeverReportedMissing() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        List<String> added = isbns(0, 1000);
+        added.forEach(filter::put);
+
+        assertThat(added).allMatch(filter::mightContain);
+        assertThat(filter.approximateElementCount()).isBetween(950L, 1050L);
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheConfiguredOne() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        isbns(0, 1000).forEach(filter::put);
+
+        long falsePositives = isbns(1000, 11000).stream().filter(filter::mightContain).count();
+        assertThat(falsePositives / 10000.0).isLessThan(0.02);
+        assertThat(filter.expectedFalsePositiveRate()).isLessThan(0.02);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = BloomFilter.create(100, 0.01);
+        assertThat(filter.mightContain("9780000000")).isFalse();
+        assertThat(filter.bitCount()).isZero();
+        assertThat(filter.approximateElementCount()).isZero();
+    }
+
+    @Test
+    void offsetsAreLaidOutAsARedisBitmap() {
+        BloomFilter filter = BloomFilter.create(100, 0.01);
+        filter.put("9780000001");
+        byte[] bytes = filter.toBytes();
+
+        // bit 0 is the most significant bit of the first byte, as with SETBIT
+        for (long offset : filter.offsets("9780000001")) {
+            assertThat(offset).isBetween(0L, filter.bits() - 1);
+            assertThat((bytes[(int) (offset / 8)] >> (7 - offset % 8)) & 1).isEqualTo(1);
+        }
+        assertThat(filter.offsets("9780000001")).containsExactly(filter.offsets("9780000001"));
+    }
+
+    @Test
+    void toBytesAndOrRoundTrip() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        List<String> added = isbns(0, 200);
+        added.forEach(filter::put);
+
+        BloomFilter copy = BloomFilter.create(1000, 0.01);
+        copy.or(filter.toBytes());
+
+        assertThat(copy.toBytes()).isEqualTo(filter.toBytes());
+        assertThat(added).allMatch(copy::mightContain);
+    }
+
+    @Test
+    void orAcceptsABitmapShorterThanTheFilter() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        filter.put("9780000001");
+        byte[] bytes = filter.toBytes();
+        // Redis returns a bitmap only up to its last byte with a bit set
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            length--;
+        }
+        byte[] shortBitmap = Arrays.copyOf(bytes, length);
+
+        BloomFilter copy = BloomFilter.create(1000, 0.01);
+        copy.or(shortBitmap);
+        assertThat(copy.toBytes()).isEqualTo(bytes);
+        assertThat(copy.mightContain("9780000001")).isTrue();
+
+        BloomFilter empty = BloomFilter.create(1000, 0.01);
+        empty.or(new byte[0]);
+        assertThat(empty.bitCount()).isZero();
+    }
+
+    @Test
+    void orKeepsBitsAlreadySet() {
+        BloomFilter local = BloomFilter.create(1000, 0.01);
+        local.put("9780000001");
+        BloomFilter remote = BloomFilter.create(1000, 0.01);
+        remote.put("9780000002");
+
+        local.or(remote.toBytes());
+        assertThat(local.mightContain("9780000001")).isTrue();
+        assertThat(local.mightContain("9780000002")).isTrue();
+    }
+
+    private static List<String> isbns(int from, int to) {
+        List<String> isbns = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            isbns.add(String.format("978%07d", i));
+        }
+        return isbns;
+    }
+}
@@ -0,0 +1,76 @@
+package com.grayseal.bookstore.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonPayloadRedisSerializerTests {
+
+    private static final byte[] JSON = ("{\"books\":[" + "{\"title\":\"Redis in Action\",\"price\":41.37},".repeat(100)
+            + "{}]}").getBytes(StandardCharsets.UTF_8);
+
+    private final JsonPayloadRedisSerializer serializer = new JsonPayloadRedisSerializer();
+
+    @Test
+    void plainPayloadsRoundTrip() {
+        JsonPayload payload = JsonPayload.of(JSON, -1);
+        byte[] bytes = serializer.serialize(payload);
+
+        // flags, digest, body
+        assertThat(bytes[0]).isEqualTo((byte) 2);
+        assertThat(Arrays.copyOfRange(bytes, 1, 1 + JsonPayload.DIGEST_LENGTH)).isEqualTo(JsonPayload.digest(JSON));
+        assertThat(Arrays.copyOfRange(bytes, 1 + JsonPayload.DIGEST_LENGTH, bytes.length)).isEqualTo(JSON);
+
+        JsonPayload read = serializer.deserialize(bytes);
+        assertThat(read.isCompressed()).isFalse();
+        assertThat(read.json()).isEqualTo(JSON);
+        assertThat(read.etag()).isEqualTo(payload.etag());
+    }
+
+    @Test
+    void compressedPayloadsRoundTrip() {
+        JsonPayload payload = JsonPayload.of(JSON, 0);
+        byte[] bytes = serializer.serialize(payload);
+
+        assertThat(bytes[0]).isEqualTo((byte) 3);
+        assertThat(bytes).hasSize(1 + JsonPayload.DIGEST_LENGTH + payload.size());
+
+        JsonPayload read = serializer.deserialize(bytes);
+        assertThat(read.isCompressed()).isTrue();
+        assertThat(read.json()).isEqualTo(JSON);
+        assertThat(read.etag()).isEqualTo(payload.etag());
+    }
+
+    @Test
+    void payloadsCachedWithoutDigestAreStillRead() {
+        // the format before ETags: one flag byte, then the body
+        byte[] plain = new byte[1 + JSON.length];
+        System.arraycopy(JSON, 0, plain, 1, JSON.length);
+        JsonPayload read = serializer.deserialize(plain);
+        assertThat(read.isCompressed()).isFalse();
+        assertThat(read.json()).isEqualTo(JSON);
+        assertThat(read.etag()).isEqualTo(JsonPayload.of(JSON, -1).etag());
+
+        JsonPayload compressed = JsonPayload.of(JSON, 0);
+        byte[] gzip = new byte[1 + compressed.size()];
+        gzip[0] = 1;
+        System.arraycopy(compressed.getBody(), 0, gzip, 1, compressed.size());
+        read = serializer.deserialize(gzip);
+        assertThat(read.isCompressed()).isTrue();
+        assertThat(read.json()).isEqualTo(JSON);
+        assertThat(read.etag()).isEqualTo(compressed.etag());
+
+        // and written back in the current format
+        assertThat(serializer.serialize(read)).isEqualTo(serializer.serialize(compressed));
+    }
+
+    @Test
+    void nullAndEmptyValuesAreNull() {
+        assertThat(serializer.serialize(null)).isNull();
+        assertThat(serializer.deserialize(null)).isNull();
+        assertThat(serializer.deserialize(new byte[0])).isNull();
+    }
+}
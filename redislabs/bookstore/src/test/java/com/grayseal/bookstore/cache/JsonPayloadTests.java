@@ -0,0 +1,116 @@
+package com.grayseal.bookstore.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonPayloadTests {
+
+    private static final byte[] SMALL = "{\"books\":[]}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LARGE = ("{\"books\":[" + "{\"title\":\"Redis in Action\",\"price\":41.37},".repeat(100)
+            + "{}]}").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void documentsBelowTheThresholdAreNotCompressed() {
+        JsonPayload payload = JsonPayload.of(LARGE, LARGE.length + 1);
+        assertThat(payload.isCompressed()).isFalse();
+        assertThat(payload.size()).isEqualTo(LARGE.length);
+        assertThat(payload.json()).isEqualTo(LARGE);
+    }
+
+    @Test
+    void documentsFromTheThresholdAreCompressed() {
+        JsonPayload payload = JsonPayload.of(LARGE, LARGE.length);
+        assertThat(payload.isCompressed()).isTrue();
+        assertThat(payload.size()).isLessThan(LARGE.length);
+        assertThat(payload.json()).isEqualTo(LARGE);
+    }
+
+    @Test
+    void documentsThatGrowWhenCompressedAreKeptPlain() {
+        JsonPayload payload = JsonPayload.of(SMALL, 0);
+        assertThat(payload.isCompressed()).isFalse();
+        assertThat(payload.json()).isEqualTo(SMALL);
+    }
+
+    @Test
+    void aNegativeThresholdNeverCompresses() {
+        assertThat(JsonPayload.of(LARGE, -1).isCompressed()).isFalse();
+    }
+
+    @Test
+    void theEtagDependsOnlyOnTheJson() {
+        assertThat(JsonPayload.of(LARGE, 0).etag()).isEqualTo(JsonPayload.of(LARGE, -1).etag());
+        assertThat(JsonPayload.of(LARGE, 0).etag()).isNotEqualTo(JsonPayload.of(SMALL, 0).etag());
+        assertThat(JsonPayload.of(SMALL, 0).etag()).startsWith("\"").endsWith("\"");
+    }
+
+    @Test
+    void acceptsGzipWhenListed() {
+        assertThat(JsonPayload.acceptsGzip("gzip")).isTrue();
+        assertThat(JsonPayload.acceptsGzip("GZIP")).isTrue();
+        assertThat(JsonPayload.acceptsGzip("deflate, gzip;q=0.5")).isTrue();
+        assertThat(JsonPayload.acceptsGzip("gzip ; q=1.0, br")).isTrue();
+    }
+
+    @Test
+    void doesNotAcceptGzipWhenAbsentOrRefused() {
+        assertThat(JsonPayload.acceptsGzip(null)).isFalse();
+        assertThat(JsonPayload.acceptsGzip("")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("identity")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("deflate, br")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("gzip; q=0.000")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("br, gzip;Q=0")).isFalse();
+    }
+
+    @Test
+    void theWildcardAcceptsGzipUnlessGzipIsListed() {
+        assertThat(JsonPayload.acceptsGzip("*")).isTrue();
+        assertThat(JsonPayload.acceptsGzip("br;q=1, *;q=0.1")).isTrue();
+        assertThat(JsonPayload.acceptsGzip("*;q=0")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("gzip;q=0, *")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("*, gzip;q=0")).isFalse();
+        assertThat(JsonPayload.acceptsGzip("*;q=0, gzip")).isTrue();
+    }
+
+    @Test
+    void compressedPayloadsAreSentAsIsToGzipClients() {
+        JsonPayload payload = JsonPayload.of(LARGE, 0);
+
+        ResponseEntity<byte[]> gzip = payload.toResponseEntity("gzip", null, CacheControl.noCache());
+        assertThat(gzip.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzip.getHeaders().getETag()).isNotEqualTo(payload.etag()).endsWith("-gzip\"");
+        assertThat(gzip.getBody()).hasSize(payload.size());
+
+        ResponseEntity<byte[]> identity = payload.toResponseEntity("gzip;q=0", null, CacheControl.noCache());
+        assertThat(identity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(identity.getHeaders().getETag()).isEqualTo(payload.etag());
+        assertThat(identity.getBody()).isEqualTo(LARGE);
+    }
+
+    @Test
+    void matchingTagsAreAnsweredWithNotModified() {
+        JsonPayload payload = JsonPayload.of(LARGE, 0);
+        String gzipTag = payload.toResponseEntity("gzip", null, CacheControl.noCache()).getHeaders().getETag();
+
+        assertThat(payload.matches(payload.etag())).isTrue();
+        assertThat(payload.matches(gzipTag)).isTrue();
+        assertThat(payload.matches("W/" + payload.etag())).isTrue();
+        assertThat(payload.matches("\"other\", " + payload.etag())).isTrue();
+        assertThat(payload.matches("*")).isTrue();
+        assertThat(payload.matches("\"other\"")).isFalse();
+        assertThat(payload.matches(null)).isFalse();
+
+        ResponseEntity<byte[]> notModified = payload.toResponseEntity(null, gzipTag, CacheControl.noCache());
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getBody()).isNull();
+    }
+}
@@ -0,0 +1,233 @@
+package com.grayseal.bookstore.redis;
+
+import com.grayseal.bookstore.models.Book;
+import com.grayseal.bookstore.models.Category;
+import com.grayseal.bookstore.models.Role;
+import com.grayseal.bookstore.models.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactLayoutTests {
+
+    private static final String CATEGORY_KEYSPACE = Category.class.getName();
+    private static final String ROLE_KEYSPACE = Role.class.getName();
+
+    private final RedisMappingContext mappingContext = new RedisMappingContext();
+    private final MappingRedisConverter converter = converter(mappingContext);
+    private final CompactLayout layout = new CompactLayout(mappingContext, false);
+    private final CompactLayout packingLayout = new CompactLayout(mappingContext, true);
+
+    @Test
+    void bookRoundTripsThroughTheCompactLayout() {
+        RedisData verbose = write(book("x".repeat(40)));
+        Map<String, String> original = fields(verbose);
+        assertThat(original).containsKeys("authors.[0]", "authors.[1]", "categories.[0]");
+        assertThat(original.get("categories.[0]")).isEqualTo(CATEGORY_KEYSPACE + ":java");
+
+        RedisData compact = copy(verbose);
+        layout.compact(Book.class, compact);
+        Map<String, String> compactFields = fields(compact);
+        assertThat(compactFields).containsEntry("t", "Redis in Action")
+                .containsEntry("a.0", original.get("authors.[0]"))
+                .containsEntry("a.1", original.get("authors.[1]"))
+                .containsEntry("c.0", "java")
+                .doesNotContainKeys("_class", "id", "title", "authors.[0]", "categories.[0]", CompactLayout.PACKED_FIELD);
+
+        layout.expand(Book.class, compact);
+        assertThat(fields(compact)).isEqualTo(withoutTypeHint(original));
+    }
+
+    @Test
+    void userRoundTripsWithItsRoleReferences() {
+        User user = new User();
+        user.setId("u1");
+        user.setName("Ada Lovelace");
+        user.setEmail("ada@example.com");
+        user.setPassword("$2a$10$abcdefghijklmnopqrstuv");
+        user.addRole(Role.builder().id("r1").name("admin").build());
+        user.addRole(Role.builder().id("r2").name("customer").build());
+        RedisData verbose = write(user);
+        Map<String, String> original = fields(verbose);
+
+        RedisData compact = copy(verbose);
+        layout.compact(User.class, compact);
+        assertThat(fields(compact)).containsKeys("n", "e", "pw", "r.0", "r.1");
+        assertThat(fields(compact).get("r.0")).doesNotStartWith(ROLE_KEYSPACE);
+
+        layout.expand(User.class, compact);
+        assertThat(fields(compact)).isEqualTo(withoutTypeHint(original));
+    }
+
+    @Test
+    void expandLeavesAHashInTheDefaultLayoutAsItIs() {
+        RedisData verbose = write(book("A description."));
+        Map<String, String> original = fields(verbose);
+
+        layout.expand(Book.class, verbose);
+        assertThat(fields(verbose)).isEqualTo(original);
+
+        // expanding twice changes nothing either
+        RedisData compact = copy(write(book("A description.")));
+        layout.compact(Book.class, compact);
+        layout.expand(Book.class, compact);
+        Map<String, String> expanded = fields(compact);
+        layout.expand(Book.class, compact);
+        assertThat(fields(compact)).isEqualTo(expanded);
+    }
+
+    @Test
+    void packedPropertiesAreStoredInOneField() {
+        RedisData verbose = write(book("A short description."));
+        Map<String, String> original = fields(verbose);
+
+        RedisData compact = copy(verbose);
+        packingLayout.compact(Book.class, compact);
+        Map<String, String> compactFields = fields(compact);
+        assertThat(compactFields).containsKeys(CompactLayout.PACKED_FIELD, "t", "p")
+                .doesNotContainKeys("d", "th", "il", "description", "thumbnail", "infoLink");
+
+        // either layout reads a packed hash
+        packingLayout.expand(Book.class, compact);
+        assertThat(fields(compact)).isEqualTo(withoutTypeHint(original));
+    }
+
+    @Test
+    void longPackedPropertiesAreDeflated() {
+        String description = "Redis is an in-memory data store. ".repeat(50);
+        RedisData compact = copy(write(book(description)));
+        packingLayout.compact(Book.class, compact);
+
+        byte[] packed = compact.getBucket().get(CompactLayout.PACKED_FIELD);
+        assertThat(packed[0]).isEqualTo((byte) 1);
+        assertThat(packed.length).isLessThan(description.length());
+
+        layout.expand(Book.class, compact);
+        assertThat(fields(compact)).containsEntry("description", description);
+    }
+
+    @Test
+    void packRoundTripsRawAndDeflatedFields() {
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        fields.put("d", "A short description".getBytes(StandardCharsets.UTF_8));
+        fields.put("th", new byte[0]);
+        fields.put("il", "http://example.com".getBytes(StandardCharsets.UTF_8));
+
+        byte[] raw = CompactLayout.pack(fields);
+        assertThat(raw[0]).isEqualTo((byte) 0);
+        assertThat(strings(CompactLayout.unpack(raw))).isEqualTo(strings(fields));
+
+        fields.put("d", "compressible ".repeat(100).getBytes(StandardCharsets.UTF_8));
+        byte[] deflated = CompactLayout.pack(fields);
+        assertThat(deflated[0]).isEqualTo((byte) 1);
+        assertThat(strings(CompactLayout.unpack(deflated))).isEqualTo(strings(fields));
+    }
+
+    @Test
+    void packRoundTripsLengthsOfSeveralVarintBytes() {
+        Random random = new Random(42);
+        for (int length : List.of(127, 128, 129, 300, 16383, 16384, 70000)) {
+            // random bytes do not deflate, so the lengths are written as they are
+            byte[] value = new byte[length];
+            random.nextBytes(value);
+            Map<String, byte[]> fields = new LinkedHashMap<>();
+            fields.put("v", value);
+            fields.put("x", new byte[]{1, 2, 3});
+
+            byte[] packed = CompactLayout.pack(fields);
+            assertThat(packed[0]).isEqualTo((byte) 0);
+            Map<String, byte[]> unpacked = CompactLayout.unpack(packed);
+            assertThat(unpacked.keySet()).containsExactly("v", "x");
+            assertThat(unpacked.get("v")).isEqualTo(value);
+            assertThat(unpacked.get("x")).containsExactly(1, 2, 3);
+
+            // long names and deflated values
+            String name = "n".repeat(Math.min(length, 300));
+            byte[] repeated = "ab".repeat(length).getBytes(StandardCharsets.UTF_8);
+            Map<String, byte[]> compressible = new LinkedHashMap<>();
+            compressible.put(name, repeated);
+            compressible.put("v", value);
+            unpacked = CompactLayout.unpack(CompactLayout.pack(compressible));
+            assertThat(unpacked.keySet()).containsExactly(name, "v");
+            assertThat(unpacked.get(name)).isEqualTo(repeated);
+            assertThat(unpacked.get("v")).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void typesWithoutCompactFieldsAreLeftAlone() {
+        RedisData verbose = write(Category.builder().id("java").name("Java").build());
+        Map<String, String> original = fields(verbose);
+
+        assertThat(layout.isCompact(Category.class)).isFalse();
+        assertThat(layout.isCompact(Book.class)).isTrue();
+        assertThat(layout.field(Book.class, "title")).isEqualTo("t");
+        assertThat(layout.field(Category.class, "name")).isEqualTo("name");
+
+        layout.compact(Category.class, verbose);
+        assertThat(fields(verbose)).isEqualTo(original);
+    }
+
+    private static Book book(String description) {
+        Book book = new Book();
+        book.setId("9780000001");
+        book.setTitle("Redis in Action");
+        book.setDescription(description);
+        book.setLanguage("en");
+        book.setPageCount(320L);
+        book.setThumbnail("http://books.google.com/books/content?id=1");
+        book.setPrice(41.37);
+        book.setCurrency("USD");
+        book.setInfoLink("http://books.google.com/books?id=1");
+        book.setAuthors(new LinkedHashSet<>(List.of("Josiah L. Carlson", "Salvatore Sanfilippo")));
+        book.addCategory(Category.builder().id("java").name("Java").build());
+        return book;
+    }
+
+    private RedisData write(Object entity) {
+        RedisData data = new RedisData();
+        converter.write(entity, data);
+        return data;
+    }
+
+    private static RedisData copy(RedisData data) {
+        RedisData copy = new RedisData(Bucket.newBucketFromRawMap(data.getBucket().rawMap()));
+        copy.setId(data.getId());
+        copy.setKeyspace(data.getKeyspace());
+        return copy;
+    }
+
+    private static Map<String, String> fields(RedisData data) {
+        return strings(data.getBucket().asMap());
+    }
+
+    private static Map<String, String> withoutTypeHint(Map<String, String> fields) {
+        Map<String, String> copy = new TreeMap<>(fields);
+        copy.remove("_class");
+        return copy;
+    }
+
+    private static Map<String, String> strings(Map<String, byte[]> fields) {
+        Map<String, String> strings = new TreeMap<>();
+        fields.forEach((name, value) -> strings.put(name, new String(value, StandardCharsets.UTF_8)));
+        return strings;
+    }
+
+    private static MappingRedisConverter converter(RedisMappingContext mappingContext) {
+        MappingRedisConverter converter = new MappingRedisConverter(mappingContext);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}